@@ -0,0 +1,162 @@
+package tech.coinbub.daemon.testutils;
+
+import static org.hamcrest.Matchers.equalTo;
+import static tech.coinbub.daemon.testutils.BeanPropertyMatcher.property;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.hamcrest.StringDescription;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of {@link BeanMatcher} and {@link BeanPropertyMatcher} over
+ * {@link DaemonBeans} of varying width and mismatch ratio. `hasOnly` leaves
+ * every third constant field unnamed (and null), so the implicit-null checks
+ * are part of the measurement. Run with
+ * `-prof gc` to see the allocation rate per match. Dotted paths are measured
+ * by {@link DottedPathBenchmark}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BeanMatcherBenchmark {
+    private static final int ITEMS = 1024;
+
+    @Param({"4", "12", "24"})
+    public int fields;
+
+    @Param({"0", "10", "100"})
+    public int mismatchPercent;
+
+    private Object[] items;
+    private BeanMatcher<Object> single;
+    private BeanMatcher<Object> all;
+    private BeanMatcher<Object> only;
+    private int cursor;
+
+    @Setup
+    public void setup() throws Exception {
+        final Field[] declared = DaemonBeans.create(fields, 1).getClass().getDeclaredFields();
+        final List<Field> varying = new ArrayList<>();
+        final List<Field> unnamed = new ArrayList<>();
+        int constant = 0;
+        for (Field field : declared) {
+            if (!Objects.equals(field.get(DaemonBeans.create(fields, 1)), field.get(DaemonBeans.create(fields, 2)))) {
+                varying.add(field);
+            } else if (constant++ % 3 == 0) {
+                // Left out of hasOnly and null on every item, so it is checked as an implicit null
+                unnamed.add(field);
+            }
+        }
+
+        items = new Object[ITEMS];
+        final Object expected = create(1, unnamed);
+        final int mismatches = ITEMS * mismatchPercent / 100;
+        for (int i = 0; i < ITEMS; i++) {
+            // Identical content to `expected` unless chosen to mismatch
+            items[i] = create(i < mismatches ? i + 2 : 1, unnamed);
+        }
+        shuffle(items);
+
+        final List<BeanPropertyMatcher<?>> properties = new ArrayList<>();
+        final List<BeanPropertyMatcher<?>> named = new ArrayList<>();
+        for (Field field : declared) {
+            final BeanPropertyMatcher<?> matcher = property(field.getName(), equalTo(field.get(expected)));
+            properties.add(matcher);
+            if (!unnamed.contains(field)) {
+                named.add(matcher);
+            }
+        }
+        // A field that differs between seeds, so mismatchPercent applies to it too
+        single = BeanMatcher.has(property(varying.get(varying.size() / 2).getName(),
+                equalTo(varying.get(varying.size() / 2).get(expected))));
+        all = BeanMatcher.has(properties.toArray(new BeanPropertyMatcher<?>[properties.size()]));
+        only = BeanMatcher.hasOnly(named.toArray(new BeanPropertyMatcher<?>[named.size()]));
+    }
+
+    private Object create(final int seed, final List<Field> unset) throws IllegalAccessException {
+        final Object bean = DaemonBeans.create(fields, seed);
+        for (Field field : unset) {
+            field.set(bean, null);
+        }
+        return bean;
+    }
+
+    static void shuffle(final Object[] items) {
+        // Fixed seed so every fork sees the same order
+        final Random random = new Random(42);
+        for (int i = items.length - 1; i > 0; i--) {
+            final int j = random.nextInt(i + 1);
+            final Object tmp = items[i];
+            items[i] = items[j];
+            items[j] = tmp;
+        }
+    }
+
+    private Object next() {
+        return items[cursor++ & (ITEMS - 1)];
+    }
+
+    @Benchmark
+    public boolean singleField() {
+        return single.matches(next());
+    }
+
+    @Benchmark
+    public boolean allFields() {
+        return all.matches(next());
+    }
+
+    @Benchmark
+    public boolean hasOnly() {
+        return only.matches(next());
+    }
+
+    /**
+     * Matches, and on a mismatch builds the text Hamcrest would print.
+     */
+    @Benchmark
+    public Object matchAndDescribe() {
+        final Object item = next();
+        if (all.matches(item)) {
+            return Boolean.TRUE;
+        }
+        final StringDescription description = new StringDescription();
+        all.describeTo(description);
+        all.describeMismatch(item, description);
+        return description.toString();
+    }
+
+    /**
+     * One matcher reused across every item, as `everyItem` would.
+     */
+    @Benchmark
+    @OperationsPerInvocation(ITEMS)
+    public int reuseAcrossItems() {
+        int matched = 0;
+        for (int i = 0; i < ITEMS; i++) {
+            if (all.matches(items[i])) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+}
@@ -0,0 +1,187 @@
+package tech.coinbub.daemon.testutils;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+
+/**
+ * Representative daemon response beans of increasing width, shaped like the
+ * ones downstream client interfaces deserialize. Beans built from the same
+ * seed are equal.
+ */
+public final class DaemonBeans {
+    private DaemonBeans() {}
+
+    /**
+     * Builds a bean of the given width, seeded so that items differ.
+     *
+     * @param fields 4, 12 or 24
+     * @param seed distinguishes items
+     * @return the bean
+     */
+    public static Object create(final int fields, final int seed) {
+        switch (fields) {
+        case 4:
+            return new Info(seed);
+        case 12:
+            return new Transaction(seed);
+        case 24:
+            return new Block(seed);
+        default:
+            throw new IllegalArgumentException("No bean with " + fields + " fields");
+        }
+    }
+
+    public static class Info {
+        public Integer version;
+        public Long blocks;
+        public Integer connections;
+        public Boolean testnet;
+
+        public Info(final int seed) {
+            version = 160000;
+            blocks = (long) seed;
+            connections = 8;
+            testnet = false;
+        }
+    }
+
+    public static class ScriptPubKey {
+        public String asm;
+        public String hex;
+        public String type;
+        public String address;
+
+        public ScriptPubKey(final int seed) {
+            asm = "OP_DUP OP_HASH160 " + seed + " OP_EQUALVERIFY OP_CHECKSIG";
+            hex = "76a914" + Integer.toHexString(seed) + "88ac";
+            type = "pubkeyhash";
+            address = "mzBc4XEFSdzCDcTxAgf6EZXgsZWpztRhef";
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (!(other instanceof ScriptPubKey)) {
+                return false;
+            }
+            final ScriptPubKey that = (ScriptPubKey) other;
+            return Objects.equals(asm, that.asm) && Objects.equals(hex, that.hex)
+                    && Objects.equals(type, that.type) && Objects.equals(address, that.address);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(asm, hex, type, address);
+        }
+    }
+
+    public static class Vout {
+        public BigDecimal value;
+        public Integer n;
+        public ScriptPubKey scriptPubKey;
+
+        public Vout(final int seed) {
+            value = BigDecimal.valueOf(seed, 8);
+            n = 0;
+            scriptPubKey = new ScriptPubKey(seed);
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (!(other instanceof Vout)) {
+                return false;
+            }
+            final Vout that = (Vout) other;
+            return Objects.equals(value, that.value) && Objects.equals(n, that.n)
+                    && Objects.equals(scriptPubKey, that.scriptPubKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(value, n, scriptPubKey);
+        }
+    }
+
+    public static class Transaction {
+        public String txid;
+        public String hash;
+        public Integer version;
+        public Integer size;
+        public Integer vsize;
+        public Long locktime;
+        public String blockhash;
+        public Long confirmations;
+        public Long time;
+        public Long blocktime;
+        public String hex;
+        public Vout vout;
+
+        public Transaction(final int seed) {
+            txid = String.format("%064x", seed);
+            hash = txid;
+            version = 2;
+            size = 225;
+            vsize = 225;
+            locktime = 0L;
+            blockhash = String.format("%064x", seed * 31L);
+            confirmations = 6L;
+            time = 1500000000L + seed;
+            blocktime = time;
+            hex = "0200000001" + txid;
+            vout = new Vout(seed);
+        }
+    }
+
+    public static class Block {
+        public String hash;
+        public Long confirmations;
+        public Integer strippedsize;
+        public Integer size;
+        public Integer weight;
+        public Long height;
+        public Integer version;
+        public String versionHex;
+        public String merkleroot;
+        public Integer txCount;
+        public Long time;
+        public Long mediantime;
+        public Long nonce;
+        public String bits;
+        public BigDecimal difficulty;
+        public String chainwork;
+        public String previousblockhash;
+        public String nextblockhash;
+        public Integer nTx;
+        public String coinbase;
+        public BigDecimal reward;
+        public BigDecimal fees;
+        public String miner;
+        public Boolean mainchain;
+
+        public Block(final int seed) {
+            hash = String.format("%064x", seed);
+            confirmations = 1L;
+            strippedsize = 285;
+            size = 321;
+            weight = 1176;
+            height = (long) seed;
+            version = 0x20000000;
+            versionHex = "20000000";
+            merkleroot = String.format("%064x", seed * 17L);
+            txCount = 1;
+            time = 1500000000L + seed * 600L;
+            mediantime = time - 3000;
+            nonce = (long) seed * 7;
+            bits = "207fffff";
+            difficulty = BigDecimal.valueOf(4.656542373906925e-10);
+            chainwork = String.format("%064x", seed * 2L);
+            previousblockhash = String.format("%064x", seed - 1);
+            nextblockhash = String.format("%064x", seed + 1);
+            nTx = 1;
+            coinbase = "03" + Integer.toHexString(seed);
+            reward = BigDecimal.valueOf(5000000000L, 8);
+            fees = BigDecimal.ZERO;
+            miner = "regtest";
+            mainchain = true;
+        }
+    }
+}
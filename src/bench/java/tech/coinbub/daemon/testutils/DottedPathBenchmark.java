@@ -0,0 +1,57 @@
+package tech.coinbub.daemon.testutils;
+
+import static org.hamcrest.Matchers.equalTo;
+import static tech.coinbub.daemon.testutils.BeanPropertyMatcher.property;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of a three-level dotted {@link BeanPropertyMatcher} path,
+ * `vout.scriptPubKey.hex`, on the 12-field transaction bean, the only
+ * {@link DaemonBeans} width with nested beans.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DottedPathBenchmark {
+    private static final int ITEMS = 1024;
+    private static final int FIELDS = 12;
+
+    @Param({"0", "10", "100"})
+    public int mismatchPercent;
+
+    private Object[] items;
+    private BeanMatcher<Object> dotted;
+    private int cursor;
+
+    @Setup
+    public void setup() {
+        items = new Object[ITEMS];
+        final int mismatches = ITEMS * mismatchPercent / 100;
+        for (int i = 0; i < ITEMS; i++) {
+            items[i] = DaemonBeans.create(FIELDS, i < mismatches ? i + 2 : 1);
+        }
+        BeanMatcherBenchmark.shuffle(items);
+        final DaemonBeans.Transaction expected = (DaemonBeans.Transaction) DaemonBeans.create(FIELDS, 1);
+        dotted = BeanMatcher.has(property("vout.scriptPubKey.hex", equalTo(expected.vout.scriptPubKey.hex)));
+    }
+
+    @Benchmark
+    public boolean dottedPath() {
+        return dotted.matches(items[cursor++ & (ITEMS - 1)]);
+    }
+}
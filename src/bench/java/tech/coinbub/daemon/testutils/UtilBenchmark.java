@@ -0,0 +1,44 @@
+package tech.coinbub.daemon.testutils;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of {@link Dockerized#parseCommand(String)} and
+ * {@link Util#headers(String, String)}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UtilBenchmark {
+
+    @Param({
+        "bitcoind -regtest",
+        "bitcoind -regtest -server -rpcuser=user -rpcpassword=pass -rpcallowip=0.0.0.0/0 -printtoconsole",
+        "sh -c 'bitcoind -regtest -datadir=\"/root/.bitcoin\" -blocknotify=\"curl -s http://host/block/%s\"'"
+    })
+    public String cmd;
+
+    @Benchmark
+    public String[] parseCommand() {
+        return Dockerized.parseCommand(cmd);
+    }
+
+    @Benchmark
+    public Map<String, String> headers() {
+        return Util.headers("user", "pass");
+    }
+}
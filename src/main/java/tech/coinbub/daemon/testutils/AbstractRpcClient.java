@@ -0,0 +1,42 @@
+package tech.coinbub.daemon.testutils;
+
+import com.googlecode.jsonrpc4j.IJsonRpcClient;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Funnels every {@link IJsonRpcClient} overload into a single method, so
+ * that wrappers only have to implement one.
+ */
+abstract class AbstractRpcClient implements IJsonRpcClient {
+
+    @Override
+    public abstract Object invoke(String methodName, Object argument, Type returnType,
+            Map<String, String> extraHeaders) throws Throwable;
+
+    @Override
+    public void invoke(final String methodName, final Object argument) throws Throwable {
+        invoke(methodName, argument, (Type) null, Collections.<String, String>emptyMap());
+    }
+
+    @Override
+    public Object invoke(final String methodName, final Object argument, final Type returnType)
+            throws Throwable {
+        return invoke(methodName, argument, returnType, Collections.<String, String>emptyMap());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T invoke(final String methodName, final Object argument, final Class<T> clazz)
+            throws Throwable {
+        return (T) invoke(methodName, argument, (Type) clazz, Collections.<String, String>emptyMap());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T invoke(final String methodName, final Object argument, final Class<T> clazz,
+            final Map<String, String> extraHeaders) throws Throwable {
+        return (T) invoke(methodName, argument, (Type) clazz, extraHeaders);
+    }
+}
@@ -0,0 +1,127 @@
+package tech.coinbub.daemon.testutils;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * Runs calls on a client interface without blocking the caller. Calls are
+ * queued and sent by a fixed set of worker threads, `async.concurrency`
+ * (default `transport.connections`), so thousands of calls can be issued at
+ * once while the daemon sees a steady number of requests in flight over the
+ * shared connection pool.
+ *
+ * <pre>
+ * final CompletableFuture&lt;Block&gt; block = async.call((c) -&gt; c.getblock(hash));
+ * </pre>
+ *
+ * An interface mirroring the client with `CompletableFuture` return types can
+ * be configured as `async` in `docker.properties` and injected directly, or
+ * obtained with {@link #as(Class)}.
+ *
+ * Calls must not wait on one another: a call that blocks on another future
+ * of the same client holds a worker, and once every worker does, the calls
+ * they wait for never start. Chain dependent calls with `thenCompose`, or
+ * make them one after another inside a single call.
+ *
+ * @param <T> the client interface
+ */
+public final class AsyncClient<T> {
+    private final T client;
+    private final Executor executor;
+    private final ConcurrentMap<Method, Method> methods = new ConcurrentHashMap<>();
+
+    AsyncClient(final T client, final Executor executor) {
+        this.client = client;
+        this.executor = executor;
+    }
+
+    /**
+     * Queues a call.
+     *
+     * @param <R> the result type
+     * @param call invokes the client; may make several calls, which then run
+     * one after another on the same worker, but must not block on another
+     * future of this client
+     * @return a future completed with the result, or exceptionally with the
+     * error the client threw
+     */
+    public <R> CompletableFuture<R> call(final Function<T, R> call) {
+        return CompletableFuture.supplyAsync(() -> call.apply(client), executor);
+    }
+
+    /**
+     * Creates a view of the client through an interface whose methods have
+     * the same names and parameters, but return a `CompletableFuture` (or
+     * `CompletionStage`) of the original result. Methods returning anything
+     * else block until the call completes and throw the client's error.
+     * `equals`, `hashCode` and `toString` apply to the view itself.
+     *
+     * @param <A> the asynchronous interface
+     * @param type the asynchronous interface
+     * @return the view
+     */
+    @SuppressWarnings("unchecked")
+    public <A> A as(final Class<A> type) {
+        return (A) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    // toString, the only other Object method a proxy forwards
+                    return type.getName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+                }
+            }
+            final Method target = target(method);
+            final CompletableFuture<Object> result = call((c) -> invoke(target, c, args));
+            if (CompletionStage.class.isAssignableFrom(method.getReturnType())) {
+                return result;
+            }
+            try {
+                return result.join();
+            } catch (CompletionException ex) {
+                throw ex.getCause();
+            }
+        });
+    }
+
+    private Method target(final Method method) throws NoSuchMethodException {
+        final Method existing = methods.get(method);
+        if (existing != null) {
+            return existing;
+        }
+        final Method found = client.getClass().getMethod(method.getName(), method.getParameterTypes());
+        methods.put(method, found);
+        return found;
+    }
+
+    private static Object invoke(final Method target, final Object client, final Object[] args) {
+        try {
+            return target.invoke(client, args);
+        } catch (InvocationTargetException ex) {
+            final Throwable cause = ex.getCause() instanceof UndeclaredThrowableException
+                    ? ex.getCause().getCause()
+                    : ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new CompletionException(cause);
+        } catch (IllegalAccessException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -1,25 +1,37 @@
 package tech.coinbub.daemon.testutils;
 
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import org.hamcrest.BaseMatcher;
 import org.hamcrest.Description;
 import org.hamcrest.Factory;
-import org.hamcrest.Matcher;
 import org.hamcrest.Matchers;
-import org.hamcrest.StringDescription;
 
 // From https://github.com/sandromancuso/bean-property-matcher/blob/master/src/main/java/org/craftedsw/beanpropertymatcher/matcher/BeanMatcher.java
+/**
+ * Matches a bean against a set of property matchers. Instances hold no
+ * shared per-match state, so one matcher can be reused across any number of
+ * items (and threads). Mismatches are only described when Hamcrest asks, by
+ * matching the item again; the expected description names only the property
+ * matchers that failed for the last item this thread saw fail.
+ */
 public class BeanMatcher<T> extends BaseMatcher<T> {
 
-    private final List<BeanPropertyMatcher<?>> propertyMatchers;
-    private final Description expectedDescription = new StringDescription();
-    private final Description mismatchDescription = new StringDescription();
+    private static final BeanPropertyMatcher<?>[] NONE = new BeanPropertyMatcher<?>[0];
+
+    private final BeanPropertyMatcher<?>[] propertyMatchers;
     private final boolean only;
+    private final Set<String> knownFields;
+    private final ConcurrentMap<Class<?>, BeanPropertyMatcher<?>[]> implicitNulls = new ConcurrentHashMap<>();
+    // Only written on failure, so matching items never touch it
+    private final ThreadLocal<WeakReference<Object>> lastFailed = new ThreadLocal<>();
 
     @Factory
     public static <T> BeanMatcher<T> has(BeanPropertyMatcher<?>... propertyMatchers) {
@@ -36,49 +48,107 @@ public class BeanMatcher<T> extends BaseMatcher<T> {
     }
 
     public BeanMatcher(boolean only, BeanPropertyMatcher<?>... propertyMatchers) {
-        this.propertyMatchers = Arrays.asList(propertyMatchers);
+        this.propertyMatchers = propertyMatchers.clone();
         this.only = only;
+        this.knownFields = new HashSet<>();
+        for (BeanPropertyMatcher<?> matcher : propertyMatchers) {
+            knownFields.add(matcher.getPropertyName());
+        }
     }
 
     @Override
     public boolean matches(Object item) {
-        final List<BeanPropertyMatcher<?>> matchers = new ArrayList<>(propertyMatchers);
-        if (only) {
-            final Set<String> knownFields = propertyMatchers.stream()
-                    .map((m) -> (m.getPropertyName()))
-                    .collect(Collectors.toSet());
-            for (Field field : item.getClass().getDeclaredFields()) {
-                if (!knownFields.contains(field.getName()) && !field.isSynthetic()) {
-                    matchers.add(BeanPropertyMatcher.property(field.getName(), Matchers.is(Matchers.nullValue())));
-                }
-            }
+        if (item != null
+                && matchesAll(propertyMatchers, item)
+                && matchesAll(implicitNullsFor(item.getClass()), item)) {
+            return true;
         }
-        
-        boolean matches = true;
-        for (BeanPropertyMatcher<?> matcher : matchers) {
-            if (!matcher.matches(item)) {
-                matches = false;
-                appendDescriptions(item, matcher);
-            }
+        if (item == null) {
+            lastFailed.remove();
+        } else {
+            lastFailed.set(new WeakReference<>(item));
         }
-        return matches;
+        return false;
     }
 
     @Override
     public void describeTo(Description description) {
-        description.appendText(expectedDescription.toString());
+        final WeakReference<Object> failed = lastFailed.get();
+        final Object item = failed == null ? null : failed.get();
+        if (item != null) {
+            for (BeanPropertyMatcher<?> matcher : failuresFor(item)) {
+                matcher.describeTo(description);
+                description.appendText(" \n");
+            }
+            return;
+        }
+        for (BeanPropertyMatcher<?> matcher : propertyMatchers) {
+            matcher.describeTo(description);
+            description.appendText(" \n");
+        }
+        if (only) {
+            description.appendText("and no other non-null fields \n");
+        }
     }
 
     @Override
     public void describeMismatch(Object item, Description description) {
-        description.appendText(mismatchDescription.toString());
+        if (item == null) {
+            super.describeMismatch(item, description);
+            return;
+        }
+        for (BeanPropertyMatcher<?> matcher : failuresFor(item)) {
+            matcher.describeMismatch(item, description);
+            description.appendText(" \n");
+        }
+    }
+
+    private static boolean matchesAll(BeanPropertyMatcher<?>[] matchers, Object item) {
+        for (int i = 0; i < matchers.length; i++) {
+            if (!matchers[i].matchesQuietly(item)) {
+                return false;
+            }
+        }
+        return true;
     }
 
-    private void appendDescriptions(Object item, Matcher<?> matcher) {
-        matcher.describeTo(expectedDescription);
-        matcher.describeMismatch(item, mismatchDescription);
-        expectedDescription.appendText(" \n");
-        mismatchDescription.appendText(" \n");
+    private List<BeanPropertyMatcher<?>> failuresFor(Object item) {
+        final List<BeanPropertyMatcher<?>> failures = new ArrayList<>();
+        for (BeanPropertyMatcher<?> matcher : propertyMatchers) {
+            if (!matcher.matchesQuietly(item)) {
+                failures.add(matcher);
+            }
+        }
+        for (BeanPropertyMatcher<?> matcher : implicitNullsFor(item.getClass())) {
+            if (!matcher.matchesQuietly(item)) {
+                failures.add(matcher);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * With `hasOnly`, every declared instance field not named by a property
+     * matcher must be null. The resulting matchers are computed once per class.
+     */
+    private BeanPropertyMatcher<?>[] implicitNullsFor(Class<?> type) {
+        if (!only) {
+            return NONE;
+        }
+        final BeanPropertyMatcher<?>[] cached = implicitNulls.get(type);
+        if (cached != null) {
+            return cached;
+        }
+        final List<BeanPropertyMatcher<?>> matchers = new ArrayList<>();
+        for (Field field : type.getDeclaredFields()) {
+            if (!knownFields.contains(field.getName()) && !field.isSynthetic()
+                    && !Modifier.isStatic(field.getModifiers())) {
+                matchers.add(BeanPropertyMatcher.property(field.getName(), Matchers.is(Matchers.nullValue())));
+            }
+        }
+        final BeanPropertyMatcher<?>[] computed = matchers.toArray(new BeanPropertyMatcher<?>[matchers.size()]);
+        final BeanPropertyMatcher<?>[] existing = implicitNulls.putIfAbsent(type, computed);
+        return existing == null ? computed : existing;
     }
 
 }
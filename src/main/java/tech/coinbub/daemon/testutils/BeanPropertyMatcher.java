@@ -1,14 +1,5 @@
 package tech.coinbub.daemon.testutils;
 
-import static org.hamcrest.beans.PropertyUtil.NO_ARGUMENTS;
-import static org.hamcrest.beans.PropertyUtil.getPropertyDescriptor;
-
-import java.beans.PropertyDescriptor;
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
-import java.util.logging.Level;
-import java.util.logging.Logger;
-
 import org.hamcrest.Description;
 import org.hamcrest.Factory;
 import org.hamcrest.Matcher;
@@ -17,6 +8,7 @@ import org.hamcrest.TypeSafeDiagnosingMatcher;
 public class BeanPropertyMatcher<T> extends TypeSafeDiagnosingMatcher<T> {
 
     private final String matchingPropertyName;
+    private final String[] path;
     private final Matcher<?> valueMatcher;
 
     @Factory
@@ -26,64 +18,74 @@ public class BeanPropertyMatcher<T> extends TypeSafeDiagnosingMatcher<T> {
 
     public BeanPropertyMatcher(String propertyName, Matcher<?> valueMatcher) {
         this.matchingPropertyName = propertyName;
+        this.path = propertyName.split("\\.");
         this.valueMatcher = valueMatcher;
     }
 
     @Override
     public boolean matchesSafely(T bean, Description mismatchDescription) {
-        try {
-            return matchesSafely(bean, matchingPropertyName, mismatchDescription);
-        } catch (Exception e) {
-            return false;
+        Object current = bean;
+        final int last = path.length - 1;
+        for (int i = 0; i < last; i++) {
+            final PropertyAccessor accessor = PropertyAccessor.forGetter(current.getClass(), path[i]);
+            if (!accessor.exists()) {
+                appendProblemTo(mismatchDescription, accessor.getProblem());
+                return false;
+            }
+            try {
+                current = accessor.get(current);
+            } catch (Throwable ex) {
+                rethrowIfError(ex);
+                appendProblemTo(mismatchDescription, "reading \"" + path[i] + "\" threw " + ex);
+                return false;
+            }
+            if (current == null) {
+                appendProblemTo(mismatchDescription, "\"" + joinPath(i) + "\" was null");
+                return false;
+            }
         }
+        return matchProperty(current, path[last], mismatchDescription);
     }
 
-    private boolean matchesSafely(Object bean, String propertyName, Description mismatchDescription)
-            throws Exception {
-        Object parentObject = bean;
-        if (isComposedProperty(propertyName)) {
-            String memberObjectProperty = getMemberObjectProperty(propertyName);
-            Object memberObject = getPropertyValue(parentObject, memberObjectProperty);
-            String nextProperty = getNextProperty(propertyName);
-            return matchesSafely(memberObject, nextProperty, mismatchDescription);
-        } else {
-            return matchProperty(bean, propertyName, mismatchDescription);
+    private boolean matchProperty(Object bean, String propertyName, Description mismatchDescription) {
+        final PropertyAccessor accessor = PropertyAccessor.forField(bean.getClass(), propertyName);
+        if (!accessor.exists()) {
+            appendProblemTo(mismatchDescription, accessor.getProblem());
+            return false;
         }
+        final Object propertyValue;
+        try {
+            propertyValue = accessor.get(bean);
+        } catch (Throwable ex) {
+            rethrowIfError(ex);
+            appendProblemTo(mismatchDescription, "reading \"" + propertyName + "\" threw " + ex);
+            return false;
+        }
+        boolean valueMatches = valueMatcher.matches(propertyValue);
+        if (!valueMatches) {
+            appendSeparatorTo(mismatchDescription);
+            mismatchDescription.appendText("property \"" + matchingPropertyName + "\" ");
+            valueMatcher.describeMismatch(propertyValue, mismatchDescription);
+        }
+        return valueMatches;
     }
 
-    private String getNextProperty(String composedPropertyName) {
-        return composedPropertyName.substring(composedPropertyName.indexOf(".") + 1);
-    }
-
-    private Object getPropertyValue(Object parentObject, String memberObjectProperty)
-            throws Exception {
-        PropertyDescriptor property = getPropertyDescriptor(memberObjectProperty, parentObject);
-        Method readMethod = property.getReadMethod();
-        return readMethod.invoke(parentObject, NO_ARGUMENTS);
-    }
-
-    private boolean isComposedProperty(String propertyName) {
-        return propertyName.contains(".");
+    private String joinPath(int end) {
+        final StringBuilder builder = new StringBuilder(path[0]);
+        for (int i = 1; i <= end; i++) {
+            builder.append('.').append(path[i]);
+        }
+        return builder.toString();
     }
 
-    private String getMemberObjectProperty(String composedPropertyName) {
-        return composedPropertyName.substring(0, composedPropertyName.indexOf("."));
+    private void appendProblemTo(Description description, String problem) {
+        appendSeparatorTo(description);
+        description.appendText("property \"" + matchingPropertyName + "\" could not be read: " + problem);
     }
 
-    private boolean matchProperty(Object bean, String propertyName, Description mismatchDescription)
-            throws Exception {
-        try {
-            Field field = bean.getClass().getDeclaredField(propertyName);
-            Object propertyValue = field.get(bean);
-            boolean valueMatches = valueMatcher.matches(propertyValue);
-            if (!valueMatches) {
-                appendSeparatorTo(mismatchDescription);
-                mismatchDescription.appendText("property \"" + matchingPropertyName + "\" ");
-                valueMatcher.describeMismatch(propertyValue, mismatchDescription);
-            }
-            return valueMatches;
-        } catch (NoSuchFieldException ex) {
-            return false;
+    private static void rethrowIfError(Throwable ex) {
+        if (ex instanceof Error) {
+            throw (Error) ex;
         }
     }
 
@@ -93,6 +95,15 @@ public class BeanPropertyMatcher<T> extends TypeSafeDiagnosingMatcher<T> {
         }
     }
     
+    /**
+     * Same as {@link #matches(Object)}, but without allocating a throwaway
+     * description on every call.
+     */
+    @SuppressWarnings("unchecked")
+    boolean matchesQuietly(Object item) {
+        return item != null && matchesSafely((T) item, Description.NONE);
+    }
+
     String getPropertyName() {
         return matchingPropertyName;
     }
@@ -0,0 +1,81 @@
+package tech.coinbub.daemon.testutils;
+
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Records the call a client proxy would make instead of sending it. Running
+ * interface calls through a proxy built on this client yields exactly the
+ * method name and parameters that the real proxy would have used.
+ */
+final class CapturingRpcClient extends AbstractRpcClient {
+    private static final Map<Class<?>, Object> DEFAULTS = new HashMap<>();
+
+    static {
+        DEFAULTS.put(boolean.class, false);
+        DEFAULTS.put(char.class, '\0');
+        DEFAULTS.put(byte.class, (byte) 0);
+        DEFAULTS.put(short.class, (short) 0);
+        DEFAULTS.put(int.class, 0);
+        DEFAULTS.put(long.class, 0L);
+        DEFAULTS.put(float.class, 0f);
+        DEFAULTS.put(double.class, 0d);
+    }
+
+    private Call captured;
+
+    @Override
+    public Object invoke(final String methodName, final Object argument, final Type returnType,
+            final Map<String, String> extraHeaders) {
+        if (captured != null) {
+            throw new IllegalStateException("Each batched call must make exactly one RPC call, but "
+                    + captured.getMethod() + " was followed by " + methodName);
+        }
+        captured = new Call(methodName, argument, returnType);
+        return returnType instanceof Class ? DEFAULTS.get(returnType) : null;
+    }
+
+    /**
+     * Returns and clears the last captured call.
+     */
+    Call take() {
+        final Call call = captured;
+        captured = null;
+        if (call == null) {
+            throw new IllegalStateException("No RPC call was made on the client");
+        }
+        return call;
+    }
+
+    /**
+     * Drops any captured call.
+     */
+    void reset() {
+        captured = null;
+    }
+
+    static final class Call {
+        private final String method;
+        private final Object argument;
+        private final Type returnType;
+
+        Call(final String method, final Object argument, final Type returnType) {
+            this.method = method;
+            this.argument = argument;
+            this.returnType = returnType;
+        }
+
+        String getMethod() {
+            return method;
+        }
+
+        Object getArgument() {
+            return argument;
+        }
+
+        Type getReturnType() {
+            return returnType;
+        }
+    }
+}
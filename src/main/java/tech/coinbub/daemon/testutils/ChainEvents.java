@@ -0,0 +1,251 @@
+package tech.coinbub.daemon.testutils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.model.Network;
+import com.googlecode.jsonrpc4j.IJsonRpcClient;
+import com.googlecode.jsonrpc4j.JsonRpcClientException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Waits on chain state using the daemon's notification hooks rather than
+ * polling loops.
+ *
+ * Any `{events}` placeholder in `cmd` (or a node or matrix `cmd`) is replaced
+ * with the URL of a small HTTP listener started on the host, followed by the
+ * name of the container the command runs in, so each pool member, node and
+ * matrix entry notifies its own waits, e.g.
+ *
+ * <pre>
+ * cmd=bitcoind -regtest -blocknotify="curl -s {events}/block/%s" -walletnotify="curl -s {events}/tx/%s"
+ * </pre>
+ *
+ * The image must provide `curl` or `wget`. The container reaches the listener
+ * through the default bridge gateway unless `events.host` is set, and
+ * `events.port` fixes the listener port (by default any free port, which
+ * prevents container reuse between runs).
+ *
+ * Waits re-check the daemon as soon as a notification arrives, and every
+ * `events.poll` milliseconds (default 5000) in case one was missed, so they
+ * also work, more slowly, without any hooks configured; a warning is logged
+ * the first time a wait only succeeds by polling. The checks call
+ * `events.heightMethod` (default `getblockcount`) and `events.txMethod`
+ * (default `getrawtransaction`).
+ */
+public final class ChainEvents {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChainEvents.class);
+    private static final ConcurrentMap<String, ChainEvents> REGISTRY = new ConcurrentHashMap<>();
+    private static HttpServer server;
+
+    private final String name;
+    private final Set<String> transactions = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private volatile DaemonContainer container;
+    private long events = 0;
+    private String lastBlock;
+    private volatile boolean warned = false;
+
+    private ChainEvents(final String name) {
+        this.name = name;
+    }
+
+    /**
+     * Starts the listener, if it isn't running yet.
+     *
+     * @param docker the docker client, used to find the bridge gateway
+     * @param config the daemon configuration
+     * @return the base URL containers should call
+     * @throws IOException
+     */
+    static synchronized String listen(final DockerClient docker, final DaemonConfig config) throws IOException {
+        String host = config.getProperties().getProperty("events.host");
+        if (host == null) {
+            host = gateway(docker);
+        }
+        if (server == null) {
+            final int port = Integer.parseInt(config.getProperties().getProperty("events.port", "0"));
+            server = HttpServer.create(new InetSocketAddress(port), 0);
+            server.createContext("/", ChainEvents::handle);
+            server.setExecutor(Executors.newSingleThreadExecutor((r) -> {
+                final Thread thread = new Thread(r, "dockerized-events");
+                thread.setDaemon(true);
+                return thread;
+            }));
+            server.start();
+            LOGGER.info("Listening for chain events on port {}", server.getAddress().getPort());
+        }
+        return "http://" + host + ":" + server.getAddress().getPort();
+    }
+
+    private static String gateway(final DockerClient docker) {
+        final Network bridge = docker.inspectNetworkCmd()
+                .withNetworkId("bridge")
+                .exec();
+        final List<Network.Ipam.Config> configs = bridge.getIpam().getConfig();
+        if (configs == null || configs.isEmpty() || configs.get(0).getGateway() == null) {
+            throw new RuntimeException("Could not find the bridge gateway; set events.host");
+        }
+        return configs.get(0).getGateway();
+    }
+
+    /**
+     * Handles `/{container}/{block|tx}/{value}`.
+     */
+    private static void handle(final HttpExchange exchange) throws IOException {
+        try {
+            final String[] parts = exchange.getRequestURI().getPath().split("/");
+            if (parts.length >= 4) {
+                of(parts[1]).onEvent(parts[2], parts[3]);
+                exchange.sendResponseHeaders(204, -1);
+            } else {
+                exchange.sendResponseHeaders(404, -1);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * @param container the container to wait on
+     * @return the events of that container
+     */
+    static ChainEvents of(final DaemonContainer container) {
+        final ChainEvents result = of(container.getName());
+        result.container = container;
+        return result;
+    }
+
+    private static ChainEvents of(final String name) {
+        final ChainEvents existing = REGISTRY.get(name);
+        return existing != null ? existing : REGISTRY.computeIfAbsent(name, ChainEvents::new);
+    }
+
+    private synchronized void onEvent(final String type, final String value) {
+        LOGGER.debug("{} notified {} {}", name, type, value);
+        if ("block".equals(type)) {
+            lastBlock = value;
+        } else if ("tx".equals(type)) {
+            transactions.add(value);
+        }
+        events++;
+        notifyAll();
+    }
+
+    /**
+     * @return the hash of the last block notified, or null
+     */
+    public synchronized String getLastBlock() {
+        return lastBlock;
+    }
+
+    /**
+     * Blocks until the chain is at least `height` blocks long.
+     *
+     * @param height the minimum block count
+     * @param timeout the maximum wait, in milliseconds
+     * @return the block count reached
+     * @throws InterruptedException
+     */
+    public long awaitHeight(final long height, final long timeout) throws InterruptedException {
+        final String method = property("events.heightMethod", "getblockcount");
+        return await(timeout, "height " + height, () -> {
+            final long current = rpc().invoke(method, new Object[0], Long.class);
+            return current >= height ? current : null;
+        });
+    }
+
+    /**
+     * Blocks until the daemon knows about a transaction, either because it
+     * was notified or because `events.txMethod` finds it.
+     *
+     * @param txid the transaction id
+     * @param timeout the maximum wait, in milliseconds
+     * @throws InterruptedException
+     */
+    public void awaitTransaction(final String txid, final long timeout) throws InterruptedException {
+        final String method = property("events.txMethod", "getrawtransaction");
+        await(timeout, "transaction " + txid, () -> {
+            if (transactions.contains(txid)) {
+                return true;
+            }
+            try {
+                rpc().invoke(method, new Object[] {txid}, JsonNode.class);
+                return true;
+            } catch (JsonRpcClientException ex) {
+                return null;
+            }
+        });
+    }
+
+    @FunctionalInterface
+    private interface Check<T> {
+        /**
+         * @return the result once the condition holds, otherwise null
+         */
+        T check() throws Throwable;
+    }
+
+    private <T> T await(final long timeout, final String description, final Check<T> check)
+            throws InterruptedException {
+        final long deadline = System.nanoTime() + timeout * 1_000_000L;
+        final long poll = Long.parseLong(property("events.poll", "5000"));
+        Throwable last = null;
+        boolean polled = false;
+        while (true) {
+            final long seen;
+            synchronized (this) {
+                seen = events;
+            }
+            try {
+                final T result = check.check();
+                if (result != null) {
+                    if (polled && !warned) {
+                        warned = true;
+                        LOGGER.warn("Reached {} on {} by polling every {}ms without a notification;"
+                                + " check the {events} hooks in cmd", description, name, poll);
+                    }
+                    return result;
+                }
+                last = null;
+            } catch (Throwable ex) {
+                last = ex;
+            }
+            final long remaining = (deadline - System.nanoTime()) / 1_000_000L;
+            if (remaining <= 0) {
+                throw new RuntimeException("Timed out after " + timeout + "ms waiting for " + description
+                        + " on " + name, last);
+            }
+            synchronized (this) {
+                if (events == seen) {
+                    wait(Math.min(poll, remaining));
+                    polled = events == seen;
+                }
+            }
+        }
+    }
+
+    private IJsonRpcClient rpc() {
+        final DaemonContainer current = container;
+        if (current == null || current.getRpcClient() == null) {
+            throw new IllegalStateException("No RPC client for " + name);
+        }
+        return current.getRpcClient();
+    }
+
+    private String property(final String key, final String defaultValue) {
+        final DaemonContainer current = container;
+        return current == null
+                ? defaultValue
+                : current.getConfig().getProperties().getProperty(key, defaultValue);
+    }
+}
@@ -0,0 +1,277 @@
+package tech.coinbub.daemon.testutils;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.exception.NotFoundException;
+import com.github.dockerjava.api.model.Image;
+import com.github.dockerjava.api.model.Network;
+import com.github.dockerjava.core.command.PullImageResultCallback;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A fixed set of identical daemon containers that test classes or methods
+ * lease exclusively and return when done.
+ */
+public final class ContainerPool {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContainerPool.class);
+
+    private final DockerClient docker;
+    private final List<DaemonContainer> containers;
+    private final Map<String, DaemonContainer> nodes;
+    private final BlockingQueue<DaemonContainer> idle;
+
+    private ContainerPool(final DockerClient docker, final List<DaemonContainer> containers) {
+        this(docker, containers, Collections.<String, DaemonContainer>emptyMap());
+    }
+
+    private ContainerPool(final DockerClient docker, final List<DaemonContainer> containers,
+            final Map<String, DaemonContainer> nodes) {
+        this.docker = docker;
+        this.containers = Collections.unmodifiableList(containers);
+        this.nodes = Collections.unmodifiableMap(nodes);
+        // A topology is leased as a whole, through its first node
+        this.idle = new LinkedBlockingQueue<>(nodes.isEmpty() ? containers : containers.subList(0, 1));
+    }
+
+    /**
+     * Pulls the image and boots `pool.size` containers concurrently. With a
+     * single container the configured `name` is used as-is, otherwise each
+     * container gets a numeric suffix.
+     *
+     * @param config the daemon configuration
+     * @param docker the docker client
+     * @param imageId the id of the pulled image
+     * @return the started pool
+     * @throws Exception
+     */
+    static ContainerPool start(final DaemonConfig config, final DockerClient docker, final String imageId)
+            throws Exception {
+        if (!config.getNodes().isEmpty()) {
+            return startNodes(config, docker, imageId);
+        }
+        final String fingerprint = config.fingerprint(imageId);
+        LOGGER.debug("Container fingerprint {}", fingerprint);
+
+        final int size = config.getPoolSize();
+        final List<DaemonContainer> containers = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            final String name = size == 1 ? config.getName() : config.getName() + "-" + i;
+            containers.add(new DaemonContainer(config, docker, name, fingerprint));
+        }
+        startAll(containers);
+        return new ContainerPool(docker, containers);
+    }
+
+    /**
+     * Creates the topology's network and boots one container per node
+     * concurrently. The topology counts as a single pooled entry.
+     */
+    private static ContainerPool startNodes(final DaemonConfig config, final DockerClient docker,
+            final String imageId) throws Exception {
+        if (config.getPoolSize() != 1) {
+            throw new RuntimeException("pool.size must be 1 when nodes are configured");
+        }
+        createNetwork(docker, config.getNetwork());
+        final Map<String, DaemonContainer> nodes = new LinkedHashMap<>();
+        for (String node : config.getNodes()) {
+            final DaemonConfig nodeConfig = config.forNode(node);
+            final String nodeImage = nodeConfig.getImage().equals(config.getImage())
+                    ? imageId
+                    : pullImage(docker, nodeConfig.getImage());
+            nodes.put(node, new DaemonContainer(nodeConfig, docker, nodeConfig.getName(),
+                    nodeConfig.fingerprint(nodeImage)));
+        }
+        final List<DaemonContainer> containers = new ArrayList<>(nodes.values());
+        startAll(containers);
+        return new ContainerPool(docker, containers, nodes);
+    }
+
+    private static void createNetwork(final DockerClient docker, final String network) {
+        for (Network existing : docker.listNetworksCmd().withNameFilter(network).exec()) {
+            if (network.equals(existing.getName())) {
+                LOGGER.debug("Network {} already exists", network);
+                return;
+            }
+        }
+        docker.createNetworkCmd()
+                .withName(network)
+                .withDriver("bridge")
+                .exec();
+        LOGGER.info("Created network {}", network);
+    }
+
+    /**
+     * Wraps a daemon that is running outside of our control.
+     */
+    static ContainerPool external(final DaemonContainer container) throws Exception {
+        container.connect();
+        return new ContainerPool(null, Collections.singletonList(container));
+    }
+
+    /**
+     * Serves every lease from a recorded tape.
+     */
+    static ContainerPool replay(final DaemonConfig config, final RpcTape tape) throws Exception {
+        LOGGER.info("Replaying {} recorded requests", tape.size());
+        return new ContainerPool(null, Collections.singletonList(
+                DaemonContainer.replay(config, new ReplayRpcClient(tape))));
+    }
+
+    /**
+     * Starts the given containers in parallel, failing if any of them fails.
+     */
+    static void startAll(final List<DaemonContainer> containers) throws Exception {
+        if (containers.size() == 1) {
+            containers.get(0).start();
+            return;
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(containers.size());
+        try {
+            final List<CompletableFuture<Void>> futures = new ArrayList<>(containers.size());
+            for (DaemonContainer container : containers) {
+                futures.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        container.start();
+                    } catch (Exception ex) {
+                        throw new CompletionException(ex);
+                    }
+                }, executor));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]))
+                    .join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof Exception) {
+                throw (Exception) ex.getCause();
+            }
+            throw ex;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Pulls down the requested image if it doesn't already exist locally.
+     *
+     * @return the id of the local image
+     * @throws InterruptedException
+     */
+    static String pullImage(final DockerClient docker, final String image) throws InterruptedException {
+        final List<Image> img = docker.listImagesCmd()
+                .withImageNameFilter(image)
+                .exec();
+        if (img.isEmpty()) {
+            docker.pullImageCmd(image)
+                    .exec(new PullImageResultCallback())
+                    .awaitCompletion();
+        }
+        return docker.inspectImageCmd(image)
+                .exec()
+                .getId();
+    }
+
+    /**
+     * Takes a container out of the pool, waiting for one to be returned if
+     * all are in use.
+     *
+     * @return the leased container, to be closed when no longer needed
+     * @throws InterruptedException
+     */
+    public Lease lease() throws InterruptedException {
+        final DaemonContainer container = idle.take();
+        LOGGER.debug("Leased container {}", container.getName());
+        return new Lease(container);
+    }
+
+    public List<DaemonContainer> getContainers() {
+        return containers;
+    }
+
+    /**
+     * @param name a node listed in `nodes`
+     * @return that node's container
+     */
+    public DaemonContainer getNode(final String name) {
+        final DaemonContainer node = nodes.get(name);
+        if (node == null) {
+            throw new IllegalArgumentException("No node named " + name + ", expected one of " + nodes.keySet());
+        }
+        return node;
+    }
+
+    /**
+     * Stops every container in the pool, in parallel, and discards any
+     * snapshots taken from them.
+     */
+    void shutdown() {
+        containers.parallelStream().forEach((container) -> {
+            try {
+                container.stop();
+            } catch (RuntimeException ex) {
+                LOGGER.warn("Failed to stop container {}", container.getContainerId(), ex);
+            }
+        });
+        final DaemonConfig config = containers.get(0).getConfig();
+        if (docker != null && !config.isPersistent()) {
+            DaemonContainer.removeSnapshots(docker, containers);
+            if (!nodes.isEmpty()) {
+                try {
+                    docker.removeNetworkCmd(config.getNetwork()).exec();
+                } catch (NotFoundException ex) {
+                    LOGGER.debug("Network {} already removed", config.getNetwork());
+                } catch (RuntimeException ex) {
+                    LOGGER.warn("Could not remove network {}: {}", config.getNetwork(), ex.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Exclusive use of one pooled container. Stored in the JUnit extension
+     * context so that it is returned when the owning class or method ends.
+     */
+    public final class Lease implements ExtensionContext.Store.CloseableResource {
+        private final DaemonContainer container;
+        private boolean closed = false;
+
+        private Lease(final DaemonContainer container) {
+            this.container = container;
+        }
+
+        public DaemonContainer getContainer() {
+            return container;
+        }
+
+        public ContainerPool getPool() {
+            return ContainerPool.this;
+        }
+
+        /**
+         * @return the leased container, or every node of a leased topology
+         */
+        public List<DaemonContainer> getContainers() {
+            return nodes.isEmpty() ? Collections.singletonList(container) : containers;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            idle.add(container);
+            LOGGER.debug("Returned container {}", container.getName());
+        }
+    }
+}
@@ -0,0 +1,569 @@
+package tech.coinbub.daemon.testutils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Container and client settings read from `docker.properties`.
+ */
+public final class DaemonConfig {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DaemonConfig.class);
+
+    private final Properties props;
+    private final String image;
+    private final String portStr;
+    private final int portNum;
+    private final String rpcuser;
+    private final String rpcpass;
+    private final String name;
+    private final String command;
+    private final String[] cmd;
+    private final String confPath;
+    private final Class<?> clientClass;
+    private final Class<?> normalizedClass;
+    private final Class<?> asyncClass;
+    private final boolean persistent;
+    private final boolean shared;
+    private final List<String> nodes;
+    private final List<String> matrix;
+    private final String node;
+    private final String network;
+    private final int poolSize;
+    private final String transport;
+    private final int transportConnections;
+    private final boolean transportCompression;
+    private final int transportTimeout;
+    private final int asyncConcurrency;
+    private final long shapingLatency;
+    private final long shapingJitter;
+    private final long shapingBandwidth;
+    private final boolean leasePerMethod;
+    private final byte[] confArchive;
+    private final boolean ephemeral;
+    private final String tmpfsPath;
+    private final String tmpfsSize;
+    private final Long memoryLimit;
+    private final Double cpus;
+    private final int stopTimeout;
+
+    public DaemonConfig(final Properties props, final byte[] confArchive) throws ClassNotFoundException {
+        this.props = props;
+        this.confArchive = confArchive;
+        image = props.getProperty("image");
+        portStr = props.getProperty("port");
+        portNum = Integer.parseInt(portStr);
+        rpcuser = props.getProperty("rpcuser", "user");
+        rpcpass = props.getProperty("rpcpass", "pass");
+        name = props.getProperty("name", "dockerized-test");
+        command = props.getProperty("cmd");
+        cmd = getCmd(name);
+        if (cmd != null) {
+            LOGGER.info("Command: {}", (Object) cmd);
+        }
+        confPath = props.getProperty("conf");
+        clientClass = Class.forName(props.getProperty("class"));
+        if (props.containsKey("normalized")) {
+            normalizedClass = Class.forName(props.getProperty("normalized"));
+        } else {
+            normalizedClass = null;
+        }
+        if (props.containsKey("async")) {
+            asyncClass = Class.forName(props.getProperty("async"));
+        } else {
+            asyncClass = null;
+        }
+        persistent = Boolean.parseBoolean(props.getProperty("persistent", "false"));
+        shared = Boolean.parseBoolean(props.getProperty("shared", "false"));
+        if (shared && usesEvents()) {
+            // Shared containers would keep reporting to the listener of the JVM that started them
+            throw new RuntimeException("shared containers cannot use {events}");
+        }
+        nodes = list(props.getProperty("nodes"));
+        matrix = list(props.getProperty("matrix"));
+        node = props.getProperty("node");
+        network = props.getProperty("network", nodes.isEmpty() ? null : name + "-net");
+        poolSize = Integer.parseInt(props.getProperty("pool.size", "1"));
+        if (poolSize < 1) {
+            throw new RuntimeException("pool.size must be at least 1, was " + poolSize);
+        }
+        leasePerMethod = "method".equals(props.getProperty("pool.lease", "class"));
+        transport = props.getProperty("transport", "url");
+        transportConnections = Integer.parseInt(props.getProperty("transport.connections", "8"));
+        transportCompression = Boolean.parseBoolean(props.getProperty("transport.compression", "false"));
+        transportTimeout = Integer.parseInt(props.getProperty("transport.timeout", "60000"));
+        asyncConcurrency = Integer.parseInt(props.getProperty("async.concurrency",
+                String.valueOf(transportConnections)));
+        if (asyncConcurrency < 1) {
+            throw new RuntimeException("async.concurrency must be at least 1, was " + asyncConcurrency);
+        }
+        shapingLatency = Long.parseLong(props.getProperty("shaping.latency", "0"));
+        shapingJitter = Long.parseLong(props.getProperty("shaping.jitter", "0"));
+        shapingBandwidth = parseBytes(props.getProperty("shaping.bandwidth", "0"));
+
+        ephemeral = Boolean.parseBoolean(props.getProperty("ephemeral", "false"));
+        final String datadir = props.getProperty("ephemeral.datadir", "regtest");
+        if (datadir.startsWith("/") || confPath == null) {
+            tmpfsPath = datadir;
+        } else {
+            tmpfsPath = confPath.replaceAll("/+$", "") + "/" + datadir;
+        }
+        tmpfsSize = props.getProperty("ephemeral.tmpfsSize", "512m");
+        memoryLimit = props.containsKey("ephemeral.memory")
+                ? parseBytes(props.getProperty("ephemeral.memory"))
+                : null;
+        cpus = props.containsKey("ephemeral.cpus")
+                ? Double.valueOf(props.getProperty("ephemeral.cpus"))
+                : null;
+        stopTimeout = Integer.parseInt(props.getProperty("ephemeral.stopTimeout", "0"));
+    }
+
+    private static List<String> list(final String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(Arrays.asList(value.trim().split("\\s*,\\s*")));
+    }
+
+    /**
+     * @return whether any command refers to the {@link ChainEvents} listener
+     */
+    boolean usesEvents() {
+        for (String key : props.stringPropertyNames()) {
+            if (props.getProperty(key).contains("{events}")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param url the base URL of the {@link ChainEvents} listener
+     * @return a copy of this configuration with `{events}` resolved
+     * @throws ClassNotFoundException
+     */
+    DaemonConfig withEvents(final String url) throws ClassNotFoundException {
+        final Properties copy = new Properties();
+        for (String key : props.stringPropertyNames()) {
+            copy.setProperty(key, props.getProperty(key));
+        }
+        copy.setProperty("events.url", url);
+        return new DaemonConfig(copy, confArchive);
+    }
+
+    /**
+     * Parses a size such as `512m` or `2g` into bytes.
+     */
+    static long parseBytes(final String size) {
+        final String value = size.trim().toLowerCase();
+        final char unit = value.charAt(value.length() - 1);
+        final int shift;
+        switch (unit) {
+        case 'k':
+            shift = 10;
+            break;
+        case 'm':
+            shift = 20;
+            break;
+        case 'g':
+            shift = 30;
+            break;
+        default:
+            return Long.parseLong(value);
+        }
+        return Long.parseLong(value.substring(0, value.length() - 1)) << shift;
+    }
+
+    /**
+     * Loads `docker.properties` and `conf.tar.gz` from the root of the test
+     * classpath.
+     *
+     * @return the parsed configuration
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    public static DaemonConfig load() throws IOException, ClassNotFoundException {
+        return new DaemonConfig(loadProperties(), readConfArchive());
+    }
+
+    static Properties loadProperties() throws IOException {
+        final Properties props = new Properties();
+        try (InputStream is = DaemonConfig.class.getResourceAsStream("/docker.properties")) {
+            if (is == null) {
+                throw new RuntimeException("Unable to load docker properties. Make sure `docker.properties` exists in src/test/resources");
+            }
+            props.load(is);
+        }
+        return props;
+    }
+
+    static byte[] readConfArchive() throws IOException {
+        final byte[] archive = readResource("/conf.tar.gz");
+        if (archive == null) {
+            LOGGER.warn("Could not retrieve conf.tar.gz. Ensure it exists in src/test/resources");
+        }
+        return archive;
+    }
+
+    private static byte[] readResource(final String path) throws IOException {
+        try (InputStream stream = DaemonConfig.class.getResourceAsStream(path)) {
+            if (stream == null) {
+                return null;
+            }
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Derives the configuration of one node of a multi-node topology. Every
+     * `node.<node>.<key>` property overrides `<key>`, e.g. `node.bob.cmd` or
+     * `node.bob.confArchive`, a classpath resource used instead of
+     * `conf.tar.gz`. The container is named `<name>-<node>` and joins
+     * `network` with the node name as its alias, so peers can be wired up
+     * with e.g. `-addnode=bob` in `cmd`.
+     *
+     * @param nodeName one of {@link #getNodes()}
+     * @return the node's configuration
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    DaemonConfig forNode(final String nodeName) throws IOException, ClassNotFoundException {
+        final Properties nodeProps = overlay("nodes", "node", nodeName);
+        nodeProps.setProperty("node", nodeName);
+        nodeProps.setProperty("network", network);
+        return derive(nodeProps, "node " + nodeName);
+    }
+
+    /**
+     * Derives the configuration of one entry of an image matrix. Every
+     * `matrix.<entry>.<key>` property overrides `<key>`, e.g.
+     * `matrix.v16.image`, `matrix.v16.cmd` or `matrix.v16.confArchive`. The
+     * container is named `<name>-<entry>`.
+     *
+     * @param entry one of {@link #getMatrix()}
+     * @return the entry's configuration
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    DaemonConfig forMatrix(final String entry) throws IOException, ClassNotFoundException {
+        return derive(overlay("matrix", "matrix", entry), "matrix entry " + entry);
+    }
+
+    /**
+     * Copies the properties, minus the `list` key and the `group.*` keys,
+     * then applies the `group.<entry>.*` overrides and names the container
+     * after the entry.
+     */
+    private Properties overlay(final String list, final String group, final String entry) {
+        final String prefix = group + "." + entry + ".";
+        final Properties result = new Properties();
+        for (String key : props.stringPropertyNames()) {
+            if (!key.equals(list) && !key.startsWith(group + ".")) {
+                result.setProperty(key, props.getProperty(key));
+            }
+        }
+        for (String key : props.stringPropertyNames()) {
+            if (key.startsWith(prefix)) {
+                result.setProperty(key.substring(prefix.length()), props.getProperty(key));
+            }
+        }
+        result.setProperty("name", name + "-" + entry);
+        return result;
+    }
+
+    private DaemonConfig derive(final Properties derived, final String description)
+            throws IOException, ClassNotFoundException {
+        final String archivePath = derived.getProperty("confArchive");
+        if (archivePath == null) {
+            return new DaemonConfig(derived, confArchive);
+        }
+        final byte[] archive = readResource(archivePath);
+        if (archive == null) {
+            throw new RuntimeException("Unable to load " + archivePath + " for " + description);
+        }
+        return new DaemonConfig(derived, archive);
+    }
+
+    /**
+     * Identifies everything that determines the state of a freshly created
+     * container: the resolved image, command, RPC port and configuration
+     * archive. Containers whose fingerprint matches can be reused as-is;
+     * across runs this only happens with `persistent=true`, since other
+     * containers are removed when the run ends.
+     *
+     * @param imageId the id of the local image `image` resolves to
+     * @return a hex-encoded SHA-256 digest
+     */
+    public String fingerprint(final String imageId) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            update(digest, imageId);
+            if (cmd != null) {
+                for (String arg : cmd) {
+                    update(digest, arg);
+                }
+            }
+            update(digest, portStr);
+            update(digest, confPath);
+            update(digest, network);
+            if (ephemeral) {
+                update(digest, tmpfsPath + " " + tmpfsSize + " " + memoryLimit + " " + cpus);
+            }
+            if (confArchive != null) {
+                digest.update(confArchive);
+            }
+            final StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static void update(final MessageDigest digest, final String value) {
+        if (value != null) {
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+        }
+        digest.update((byte) 0);
+    }
+
+    public Properties getProperties() {
+        return props;
+    }
+
+    public String getImage() {
+        return image;
+    }
+
+    public String getPortSpec() {
+        return portStr;
+    }
+
+    public int getPort() {
+        return portNum;
+    }
+
+    public String getRpcUser() {
+        return rpcuser;
+    }
+
+    public String getRpcPass() {
+        return rpcpass;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String[] getCmd() {
+        return cmd == null ? null : cmd.clone();
+    }
+
+    /**
+     * @param containerName the name of the container the command runs in
+     * @return the command, with `{events}` resolved to that container's
+     * {@link ChainEvents}, or null
+     */
+    String[] getCmd(final String containerName) {
+        if (command == null) {
+            return null;
+        }
+        if (!props.containsKey("events.url")) {
+            return Dockerized.parseCommand(command);
+        }
+        return Dockerized.parseCommand(command.replace("{events}",
+                props.getProperty("events.url") + "/" + containerName));
+    }
+
+    public String getConfPath() {
+        return confPath;
+    }
+
+    public Class<?> getClientClass() {
+        return clientClass;
+    }
+
+    public Class<?> getNormalizedClass() {
+        return normalizedClass;
+    }
+
+    /**
+     * Whether containers are left running at the end of the run, to be
+     * reused by the next run if their fingerprint still matches.
+     */
+    public boolean isPersistent() {
+        return persistent;
+    }
+
+    /**
+     * Whether JVMs running with the same configuration, such as surefire
+     * forks, share one set of containers. See {@link SharedDaemon}.
+     */
+    public boolean isShared() {
+        return shared;
+    }
+
+    /**
+     * @return the node names listed in `nodes`, empty for a single daemon
+     */
+    public List<String> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return the image matrix entries listed in `matrix`, empty when the
+     * suite runs against a single image
+     */
+    public List<String> getMatrix() {
+        return matrix;
+    }
+
+    /**
+     * @return this node's name, if this is the configuration of one node of
+     * a topology
+     */
+    public String getNode() {
+        return node;
+    }
+
+    /**
+     * @return the user-defined Docker network the containers join, `network`
+     * (default `<name>-net` when `nodes` is set)
+     */
+    public String getNetwork() {
+        return network;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public boolean isLeasePerMethod() {
+        return leasePerMethod;
+    }
+
+    /**
+     * @return the RPC transport, see {@link RpcTransport}
+     */
+    public String getTransport() {
+        return transport;
+    }
+
+    public int getTransportConnections() {
+        return transportConnections;
+    }
+
+    public boolean isTransportCompression() {
+        return transportCompression;
+    }
+
+    public int getTransportTimeout() {
+        return transportTimeout;
+    }
+
+    /**
+     * @return the asynchronous view of the client, see {@link AsyncClient}
+     */
+    public Class<?> getAsyncClass() {
+        return asyncClass;
+    }
+
+    public int getAsyncConcurrency() {
+        return asyncConcurrency;
+    }
+
+    /**
+     * @return whether RPC traffic goes through a {@link ShapingProxy}
+     */
+    public boolean isShaping() {
+        return shapingLatency > 0 || shapingJitter > 0 || shapingBandwidth > 0;
+    }
+
+    public long getShapingLatency() {
+        return shapingLatency;
+    }
+
+    public long getShapingJitter() {
+        return shapingJitter;
+    }
+
+    /**
+     * @return bytes per second, or 0 for unlimited
+     */
+    public long getShapingBandwidth() {
+        return shapingBandwidth;
+    }
+
+    /**
+     * Whether the `ephemeral` profile is active: the daemon data directory
+     * lives on a size-capped tmpfs, the container is resource-limited, and it
+     * is killed rather than stopped gracefully at the end of the run.
+     *
+     * `conf.tar.gz` is copied into the container filesystem, not the tmpfs, so
+     * it must not place files inside `ephemeral.datadir`.
+     */
+    public boolean isEphemeral() {
+        return ephemeral;
+    }
+
+    /**
+     * @return the absolute container path mounted as tmpfs, `ephemeral.datadir`
+     * resolved against `conf` (default `regtest`)
+     */
+    public String getTmpfsPath() {
+        return tmpfsPath;
+    }
+
+    /**
+     * @return the tmpfs size cap, `ephemeral.tmpfsSize` (default `512m`)
+     */
+    public String getTmpfsSize() {
+        return tmpfsSize;
+    }
+
+    /**
+     * @return the memory limit in bytes from `ephemeral.memory`, or null
+     */
+    public Long getMemoryLimit() {
+        return memoryLimit;
+    }
+
+    /**
+     * @return the CPU limit from `ephemeral.cpus`, or null
+     */
+    public Double getCpus() {
+        return cpus;
+    }
+
+    /**
+     * @return seconds to wait for a graceful stop, `ephemeral.stopTimeout`
+     * (default 0, meaning kill immediately)
+     */
+    public int getStopTimeout() {
+        return stopTimeout;
+    }
+
+    /**
+     * @return the contents of `conf.tar.gz`, or null if there is none
+     */
+    byte[] getConfArchive() {
+        return confArchive;
+    }
+}
@@ -0,0 +1,629 @@
+package tech.coinbub.daemon.testutils;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.command.CreateContainerCmd;
+import com.github.dockerjava.api.command.InspectContainerResponse;
+import com.github.dockerjava.api.exception.NotFoundException;
+import com.github.dockerjava.api.exception.NotModifiedException;
+import com.github.dockerjava.api.model.ContainerNetwork;
+import com.github.dockerjava.api.model.ExposedPort;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.github.dockerjava.api.model.HostConfig;
+import com.github.dockerjava.api.model.NetworkSettings;
+import com.github.dockerjava.api.model.PortBinding;
+import com.github.dockerjava.api.model.Ports;
+import com.googlecode.jsonrpc4j.IJsonRpcClient;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import tech.coinbub.daemon.proxy.ProxyUtil;
+
+/**
+ * A single daemon container and the RPC client connected to it.
+ */
+public final class DaemonContainer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DaemonContainer.class);
+    // Snapshot image ids by name, per container fingerprint
+    private static final ConcurrentMap<String, ConcurrentMap<String, String>> SNAPSHOTS = new ConcurrentHashMap<>();
+    static final String FINGERPRINT_LABEL = "tech.coinbub.dockerized.fingerprint";
+    private static final int CPU_PERIOD = 100000;
+
+    private final DaemonConfig config;
+    private final DockerClient docker;
+    private final String name;
+    private final String fingerprint;
+
+    private String containerId;
+    private boolean reused = false;
+    private boolean running = false;
+    private String host = "localhost";
+    private int hostPort = -1;
+    private URL url;
+    private RpcTransport transport;
+    private ShapingProxy proxy;
+    private IJsonRpcClient rpcClient;
+    private IJsonRpcClient invoker;
+    private Object client;
+    private Object normalized;
+    private ExecutorService asyncExecutor;
+    private AsyncClient<?> async;
+
+    DaemonContainer(final DaemonConfig config, final DockerClient docker, final String name,
+            final String fingerprint) {
+        this.config = config;
+        this.docker = docker;
+        this.name = name;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Creates a handle for a daemon that is already running outside of our
+     * control, e.g. a CI service container.
+     */
+    static DaemonContainer external(final DaemonConfig config, final String host, final int port) {
+        final DaemonContainer container = new DaemonContainer(config, null, null, null);
+        container.host = host;
+        container.hostPort = port;
+        return container;
+    }
+
+    /**
+     * Creates, configures and starts the container, then connects to it. A
+     * running container with a matching fingerprint is used without being
+     * touched. Containers are removed at the end of a run unless
+     * `persistent=true`, so only persistent containers (or those still
+     * running in another JVM) are ever found again.
+     *
+     * @throws Exception
+     */
+    void start() throws Exception {
+        DockerizedMetrics.time("createContainer", this::createContainer);
+        if (!reused) {
+            DockerizedMetrics.time("copyConfiguration", this::copyConfiguration);
+        }
+        if (!running) {
+            DockerizedMetrics.time("startContainer", this::startContainer);
+        }
+        DockerizedMetrics.time("getHostPortBinding", this::getHostPortBinding);
+        connect();
+    }
+
+    /**
+     * Creates a handle that serves calls from a recorded tape rather than a
+     * daemon.
+     */
+    static DaemonContainer replay(final DaemonConfig config, final IJsonRpcClient client) throws Exception {
+        final DaemonContainer container = new DaemonContainer(config, null, "replay", null);
+        container.host = "replay";
+        container.rpcClient = client;
+        container.buildProxies(Dockerized.decorate(client));
+        return container;
+    }
+
+    /**
+     * Builds the RPC client and waits until the daemon answers.
+     *
+     * @throws Exception
+     */
+    void connect() throws Exception {
+        if (proxy != null) {
+            proxy.close();
+            proxy = null;
+        }
+        if (config.isShaping()) {
+            proxy = new ShapingProxy(host, hostPort, config);
+            url = new URL("http://127.0.0.1:" + proxy.getPort());
+        } else {
+            url = new URL("http://" + host + ":" + hostPort);
+        }
+        LOGGER.info("Using URL {} over {} transport", url.toString(), config.getTransport());
+        if (transport != null) {
+            transport.close();
+        }
+        transport = RpcTransport.create(url, config);
+        rpcClient = new TransportRpcClient(transport);
+        buildProxies(Dockerized.decorate(rpcClient));
+        DockerizedMetrics.time("awaitReady", () -> ReadinessProbe.fromProperties(config.getProperties(),
+                rpcClient).await());
+    }
+
+    private void buildProxies(final IJsonRpcClient invoker) throws Exception {
+        synchronized (this) {
+            async = null;
+        }
+        this.invoker = invoker;
+        client = ProxyUtil.createClientProxy(
+                this.getClass().getClassLoader(),
+                config.getClientClass(),
+                invoker);
+        if (config.getNormalizedClass() != null) {
+            normalized = config.getNormalizedClass()
+                    .getConstructor(config.getClientClass())
+                    .newInstance(client);
+        }
+    }
+
+    /**
+     * Stops and removes the container, unless configured to be persistent.
+     */
+    void stop() {
+        if (transport != null) {
+            try {
+                transport.close();
+            } catch (IOException ex) {
+                LOGGER.debug("Failed to close transport", ex);
+            }
+        }
+        if (proxy != null) {
+            proxy.close();
+        }
+        synchronized (this) {
+            if (asyncExecutor != null) {
+                asyncExecutor.shutdownNow();
+                asyncExecutor = null;
+                async = null;
+            }
+        }
+        if (docker == null) {
+            return;
+        }
+        if (config.isPersistent()) {
+            LOGGER.info("Left container {} alive", containerId);
+            return;
+        }
+        if (config.isEphemeral()) {
+            if (config.getStopTimeout() > 0) {
+                docker.stopContainerCmd(containerId)
+                        .withTimeout(config.getStopTimeout())
+                        .exec();
+            }
+            docker.removeContainerCmd(containerId)
+                    .withForce(true)
+                    .withRemoveVolumes(true)
+                    .exec();
+            LOGGER.info("Removed ephemeral container {}", containerId);
+            return;
+        }
+        docker.stopContainerCmd(containerId).exec();
+        docker.removeContainerCmd(containerId).exec();
+        LOGGER.info("Stopped and removed container {}", containerId);
+    }
+
+    /**
+     * Commits the container's filesystem, including the daemon data
+     * directory, as a named snapshot that any container of the same pool (the
+     * same fingerprint) can later {@link #restore(String)}. The daemon is
+     * paused while committing.
+     *
+     * Only the container's own layer is captured, so the data directory must
+     * not be declared as a `VOLUME` in the image, and snapshots are not
+     * available with the `ephemeral` profile, whose data directory is a
+     * tmpfs.
+     *
+     * @param snapshotName the name to store the snapshot under
+     * @return the id of the snapshot image
+     */
+    public String snapshot(final String snapshotName) {
+        if (config.isEphemeral()) {
+            throw new UnsupportedOperationException("Cannot snapshot " + name + ": its data directory "
+                    + config.getTmpfsPath() + " is a tmpfs, which docker commit does not capture");
+        }
+        requireManaged();
+        final long start = System.currentTimeMillis();
+        final String imageId = docker.commitCmd(containerId)
+                .withRepository(config.getName() + "-snapshot")
+                .withTag(snapshotName.toLowerCase().replaceAll("[^a-z0-9_.-]", "_")
+                        + "-" + fingerprint.substring(0, Math.min(12, fingerprint.length())))
+                .exec();
+        final String previous = SNAPSHOTS.computeIfAbsent(fingerprint, (f) -> new ConcurrentHashMap<>())
+                .put(snapshotName, imageId);
+        if (previous != null && !previous.equals(imageId)) {
+            removeImage(docker, previous);
+        }
+        LOGGER.info("Snapshot {} of {} taken as {} in {}ms", snapshotName, name, imageId,
+                System.currentTimeMillis() - start);
+        return imageId;
+    }
+
+    /**
+     * Replaces this container with a fresh one created from the named
+     * snapshot. The container keeps its name and host port, so clients that
+     * were already handed out stay valid.
+     *
+     * @param snapshotName a name previously passed to {@link #snapshot(String)}
+     * on a container of the same pool
+     * @throws Exception
+     */
+    public void restore(final String snapshotName) throws Exception {
+        requireManaged();
+        final String imageId = snapshotsOf(fingerprint).get(snapshotName);
+        if (imageId == null) {
+            for (Map.Entry<String, ConcurrentMap<String, String>> entry : SNAPSHOTS.entrySet()) {
+                if (entry.getValue().containsKey(snapshotName)) {
+                    throw new IllegalStateException("Snapshot " + snapshotName + " was taken from a container "
+                            + "with a different image or configuration (fingerprint " + entry.getKey()
+                            + "), not from the pool of " + name + " (fingerprint " + fingerprint + ")");
+                }
+            }
+            throw new IllegalStateException("No snapshot named " + snapshotName);
+        }
+        final long start = System.currentTimeMillis();
+        final String previousHost = host;
+        final int previousPort = hostPort;
+        docker.removeContainerCmd(containerId)
+                .withForce(true)
+                .exec();
+        containerId = buildCreateCmd(imageId, Ports.Binding.bindIpAndPort("0.0.0.0", previousPort),
+                "snapshot:" + snapshotName)
+                .exec()
+                .getId();
+        startContainer();
+        getHostPortBinding();
+        DockerizedMetrics.recordPhase("restoreSnapshot", (System.currentTimeMillis() - start) * 1_000_000L);
+        if (!host.equals(previousHost) || hostPort != previousPort) {
+            LOGGER.warn("Container {} moved from {}:{} to {}:{}; previously resolved clients are stale",
+                    name, previousHost, previousPort, host, hostPort);
+            connect();
+        } else {
+            ReadinessProbe.fromProperties(config.getProperties(), rpcClient)
+                    .await();
+        }
+        LOGGER.info("Restored {} from snapshot {} in {}ms", name, snapshotName,
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * @param snapshotName the snapshot name
+     * @return whether a container of this pool has taken the snapshot
+     */
+    public boolean hasSnapshot(final String snapshotName) {
+        return snapshotsOf(fingerprint).containsKey(snapshotName);
+    }
+
+    private static Map<String, String> snapshotsOf(final String fingerprint) {
+        final Map<String, String> snapshots = fingerprint == null ? null : SNAPSHOTS.get(fingerprint);
+        return snapshots == null ? Collections.<String, String>emptyMap() : snapshots;
+    }
+
+    /**
+     * Removes the snapshot images taken from the given containers during this
+     * run, leaving other pools' snapshots in place.
+     */
+    static void removeSnapshots(final DockerClient docker, final Collection<DaemonContainer> containers) {
+        for (DaemonContainer container : containers) {
+            final Map<String, String> snapshots = container.fingerprint == null
+                    ? null
+                    : SNAPSHOTS.remove(container.fingerprint);
+            if (snapshots != null) {
+                for (String imageId : snapshots.values()) {
+                    removeImage(docker, imageId);
+                }
+            }
+        }
+    }
+
+    private static void removeImage(final DockerClient docker, final String imageId) {
+        try {
+            docker.removeImageCmd(imageId)
+                    .withForce(true)
+                    .exec();
+        } catch (NotFoundException ex) {
+            LOGGER.debug("Snapshot image {} already removed", imageId);
+        } catch (RuntimeException ex) {
+            LOGGER.warn("Could not remove snapshot image {}: {}", imageId, ex.getMessage());
+        }
+    }
+
+    private void requireManaged() {
+        if (docker == null) {
+            throw new IllegalStateException("Snapshots require a container managed by Dockerized");
+        }
+    }
+
+    /**
+     * Starts a new batch of calls against this container. While a tape is
+     * recorded or replayed the calls are sent one by one through the client
+     * chain, see {@link RpcBatch}.
+     *
+     * @param <T> the client interface
+     * @param type the client interface, as configured by `class`
+     * @return an empty batch
+     */
+    public <T> RpcBatch<T> batch(final Class<T> type) {
+        if (!type.equals(config.getClientClass())) {
+            throw new IllegalArgumentException(type.getName() + " is not the configured client class "
+                    + config.getClientClass().getName());
+        }
+        if (isTaped()) {
+            return new RpcBatch<>(type, invoker);
+        }
+        return new RpcBatch<>(type, transport);
+    }
+
+    /**
+     * Whether calls must go through {@link #invoker} to reach the tape: this
+     * container replays one, or a recording is in progress.
+     */
+    private boolean isTaped() {
+        return url == null || Dockerized.isRecording();
+    }
+
+    /**
+     * Calls a method that returns an array and decodes the elements lazily as
+     * they arrive, instead of binding the whole response at once. Close the
+     * stream (or let {@link ItemsMatcher} do it) to release the connection.
+     * While a tape is recorded or replayed the result is bound in one go
+     * through the client chain, so it is taped like any other call.
+     *
+     * @param <T> the element type
+     * @param method the RPC method, e.g. `listtransactions`
+     * @param type the element type
+     * @param params the positional parameters
+     * @return the elements of the result
+     * @throws IOException
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Stream<T> stream(final String method, final Class<T> type, final Object... params)
+            throws IOException {
+        if (isTaped()) {
+            try {
+                final List<T> items = (List<T>) invoker.invoke(method, params,
+                        RpcTape.MAPPER.getTypeFactory().constructCollectionType(List.class, type),
+                        Collections.<String, String>emptyMap());
+                return items == null ? Stream.<T>empty() : items.stream();
+            } catch (IOException | RuntimeException | Error ex) {
+                throw ex;
+            } catch (Throwable ex) {
+                throw new IOException(ex);
+            }
+        }
+        final Map<String, Object> request = new LinkedHashMap<>();
+        request.put("jsonrpc", "2.0");
+        request.put("id", method);
+        request.put("method", method);
+        request.put("params", params);
+
+        final long start = System.nanoTime();
+        return JsonItems.streamResult(transport.send((out) -> RpcTape.MAPPER.writeValue(out, request)), type)
+                .onClose(() -> DockerizedMetrics.recordCall(method, System.nanoTime() - start, false));
+    }
+
+    /**
+     * Returns a view of the client whose calls run concurrently on
+     * `async.concurrency` workers, see {@link AsyncClient}.
+     *
+     * @param <T> the client interface
+     * @param type the client interface, as configured by `class`
+     * @return the asynchronous client
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <T> AsyncClient<T> async(final Class<T> type) {
+        if (!type.equals(config.getClientClass())) {
+            throw new IllegalArgumentException(type.getName() + " is not the configured client class "
+                    + config.getClientClass().getName());
+        }
+        if (asyncExecutor == null) {
+            asyncExecutor = Executors.newFixedThreadPool(config.getAsyncConcurrency(), (r) -> {
+                final Thread thread = new Thread(r, "dockerized-async-" + name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        if (async == null) {
+            async = new AsyncClient<>(type.cast(client), asyncExecutor);
+        }
+        return (AsyncClient<T>) async;
+    }
+
+    /**
+     * @return waits on this container's chain state, see {@link ChainEvents}
+     */
+    public ChainEvents events() {
+        return ChainEvents.of(this);
+    }
+
+    DaemonConfig getConfig() {
+        return config;
+    }
+
+    IJsonRpcClient getRpcClient() {
+        return rpcClient;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getContainerId() {
+        return containerId;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getHostPort() {
+        return hostPort;
+    }
+
+    public Object getClient() {
+        return client;
+    }
+
+    public Object getNormalized() {
+        return normalized;
+    }
+
+    /**
+     * Create the container unless one with a matching fingerprint exists.
+     * A stale container of the same name is replaced.
+     */
+    private void createContainer() {
+        try {
+            final InspectContainerResponse existing = docker.inspectContainerCmd(name)
+                    .exec();
+            final Map<String, String> labels = existing.getConfig().getLabels();
+            if (labels != null && fingerprint.equals(labels.get(FINGERPRINT_LABEL))) {
+                containerId = existing.getId();
+                reused = true;
+                running = Boolean.TRUE.equals(existing.getState().getRunning());
+                LOGGER.info("Container {} already exists with id {} and matching fingerprint{}",
+                        name, containerId, running ? "" : " (stopped)");
+                return;
+            }
+            LOGGER.info("Container {} ({}) is stale, replacing it", name, existing.getId());
+            docker.removeContainerCmd(existing.getId())
+                    .withForce(true)
+                    .exec();
+        } catch (NotFoundException ex) {}
+
+        containerId = buildCreateCmd(config.getImage(), Ports.Binding.bindIp("0.0.0.0"), fingerprint)
+                .exec()
+                .getId();
+        LOGGER.info("Built container {} ({})", containerId, name);
+    }
+
+    private CreateContainerCmd buildCreateCmd(final String fromImage, final Ports.Binding binding,
+            final String label) {
+        final int port = config.getPort();
+        final CreateContainerCmd result = docker.createContainerCmd(fromImage)
+                .withHostConfig(config.isEphemeral() ? ephemeralHostConfig(config) : new HostConfig())
+                .withStdInOnce(false)
+                .withStdinOpen(false)
+                .withPortSpecs(config.getPortSpec())
+                .withExposedPorts(ExposedPort.tcp(port))
+                .withPortBindings(new PortBinding(binding, ExposedPort.tcp(port)))
+                .withLabels(Collections.singletonMap(FINGERPRINT_LABEL, label))
+                .withName(name);
+        final String[] cmd = config.getCmd(name);
+        if (cmd != null) {
+            result.withCmd(cmd);
+        }
+        if (config.getNetwork() != null) {
+            result.withNetworkMode(config.getNetwork());
+            if (config.getNode() != null) {
+                result.withAliases(config.getNode());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Builds the host settings of the `ephemeral` profile. The remaining
+     * settings of the create command are applied on top of it.
+     */
+    static HostConfig ephemeralHostConfig(final DaemonConfig config) {
+        final HostConfig hostConfig = new TmpfsHostConfig(
+                Collections.singletonMap(config.getTmpfsPath(), "rw,size=" + config.getTmpfsSize()));
+        if (config.getMemoryLimit() != null) {
+            hostConfig.withMemory(config.getMemoryLimit());
+        }
+        if (config.getCpus() != null) {
+            hostConfig.withCpuPeriod(CPU_PERIOD)
+                    .withCpuQuota((int) Math.round(config.getCpus() * CPU_PERIOD));
+        }
+        return hostConfig;
+    }
+
+    /**
+     * docker-java 3.0 has no tmpfs setting, but serializes the host config
+     * with Jackson, so the `Tmpfs` field of the Engine API can be added here.
+     */
+    static final class TmpfsHostConfig extends HostConfig {
+        private static final long serialVersionUID = 1L;
+
+        @JsonProperty("Tmpfs")
+        private final Map<String, String> tmpfs;
+
+        TmpfsHostConfig(final Map<String, String> tmpfs) {
+            this.tmpfs = tmpfs;
+        }
+
+        public Map<String, String> getTmpfs() {
+            return tmpfs;
+        }
+    }
+
+    private void copyConfiguration() {
+        final byte[] archive = config.getConfArchive();
+        if (archive == null) {
+            return;
+        }
+        docker.copyArchiveToContainerCmd(containerId)
+                .withTarInputStream(new ByteArrayInputStream(archive))
+                .withRemotePath(config.getConfPath())
+                .exec();
+    }
+
+    private void startContainer() {
+        try {
+            docker.startContainerCmd(containerId)
+                    .exec();
+            LOGGER.info("Started container {}", containerId);
+        } catch (NotModifiedException ex) {
+            LOGGER.info("Container {} already running", containerId);
+        }
+    }
+
+    private void getHostPortBinding() throws IOException {
+        final NetworkSettings network = docker.inspectContainerCmd(containerId)
+                .exec()
+                .getNetworkSettings();
+        final int port = config.getPort();
+
+        // Grab the host of the docker container
+        if (System.getProperty("dockerizedByIP", "false").equals("true")) {
+            LOGGER.debug("Connecting to container by IP");
+            for (Map.Entry<String, ContainerNetwork> net : network.getNetworks().entrySet()) {
+                LOGGER.debug("Network {} IP {}", net.getValue().getNetworkID(), net.getValue().getIpAddress());
+                host = net.getValue().getIpAddress();
+            }
+            LOGGER.info("Using host {}", host);
+        } else if (System.getProperty("dockerizedHost") != null) {
+            String urlStr = System.getProperty("dockerizedHost");
+            if (urlStr.contains("://")) {
+                urlStr = urlStr.split("://")[1];
+            }
+            final URL netUrl = new URL("http://" + urlStr);
+            host = netUrl.getHost();
+        }
+
+        if (System.getProperty("dockerizedUseContainerPort", "false").equals("true")) {
+            hostPort = port;
+            LOGGER.info("Using container port {}", hostPort);
+            return;
+        }
+
+        // Otherwise, grab the port bound to the exposed docker port
+        hostPort = -1;
+        final Map<ExposedPort, Ports.Binding[]> bindings = network.getPorts()
+                .getBindings();
+        for (Map.Entry<ExposedPort, Ports.Binding[]> binding : bindings.entrySet()) {
+            if (binding.getKey().getPort() == port) {
+                if (binding.getValue() == null || binding.getValue().length != 1) {
+                    throw new RuntimeException("Found "
+                            + (binding.getValue() == null ? 0 : binding.getValue().length)
+                            + " bound ports. Expected 1");
+                }
+                hostPort = Integer.parseInt(binding.getValue()[0].getHostPortSpec());
+            }
+        }
+
+        if (hostPort < 0) {
+            throw new RuntimeException("RPC port " + port + " not bound to host");
+        }
+        LOGGER.info("RPC port {} of {} bound to {}", port, name, hostPort);
+    }
+}
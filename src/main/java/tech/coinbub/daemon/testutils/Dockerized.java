@@ -1,127 +1,522 @@
 package tech.coinbub.daemon.testutils;
 
 import com.github.dockerjava.api.DockerClient;
-import com.github.dockerjava.api.command.CreateContainerCmd;
-import com.github.dockerjava.api.exception.NotFoundException;
-import com.github.dockerjava.api.exception.NotModifiedException;
-import com.github.dockerjava.api.model.Container;
-import com.github.dockerjava.api.model.ContainerNetwork;
-import com.github.dockerjava.api.model.ExposedPort;
-import com.github.dockerjava.api.model.Image;
-import com.github.dockerjava.api.model.NetworkSettings;
-import com.github.dockerjava.api.model.PortBinding;
-import com.github.dockerjava.api.model.Ports;
 import com.github.dockerjava.core.DockerClientBuilder;
-import com.github.dockerjava.core.command.PullImageResultCallback;
 import com.googlecode.jsonrpc4j.IJsonRpcClient;
-import com.googlecode.jsonrpc4j.JsonRpcClient;
-import com.googlecode.jsonrpc4j.JsonRpcHttpClient;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.StringTokenizer;
-import org.apache.commons.lang.StringUtils;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.extension.AfterAllCallback;
 import org.junit.jupiter.api.extension.BeforeAllCallback;
 import org.junit.jupiter.api.extension.BeforeEachCallback;
+import org.junit.jupiter.api.extension.Extension;
 import org.junit.jupiter.api.extension.ExtensionContext;
 import org.junit.jupiter.api.extension.ParameterContext;
 import org.junit.jupiter.api.extension.ParameterResolutionException;
 import org.junit.jupiter.api.extension.ParameterResolver;
+import org.junit.jupiter.api.extension.TestTemplateInvocationContext;
+import org.junit.jupiter.api.extension.TestTemplateInvocationContextProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import tech.coinbub.daemon.proxy.ProxyUtil;
 
-public class Dockerized implements BeforeAllCallback, BeforeEachCallback, ParameterResolver {
+/**
+ * JUnit 5 extension that boots the daemon described by `docker.properties`
+ * and injects clients for it.
+ *
+ * System properties:
+ *
+ * - `containerLocation=host:port` - use an already running daemon
+ * - `dockerizedTape=record|replay` - record every client exchange to
+ *   `dockerizedTapeFile` (default `src/test/resources/dockerized.tape`), or
+ *   serve them from it without Docker
+ * - `dockerizedStats=false` - don't sample container resource usage, see
+ *   {@link ResourceSampler}
+ *
+ * With `matrix` set in `docker.properties`, every entry's image is started
+ * concurrently and {@link MatrixTest} methods run once per entry. Plain
+ * tests run against the first entry.
+ */
+public class Dockerized implements BeforeAllCallback, BeforeEachCallback, AfterAllCallback, ParameterResolver,
+        TestTemplateInvocationContextProvider {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Dockerized.class);
+    private static final ExtensionContext.Namespace NAMESPACE = ExtensionContext.Namespace.create(Dockerized.class);
+    private static final String LEASE = "lease";
+    private static final String MATRIX_LEASE = "matrixLease";
 
-    private static Properties props;
-    private static String image;
-    private static String portStr;
-    private static int portNum;
-    private static String host = "localhost";
-    private static String rpcuser;
-    private static String rpcpass;
-    private static String name = "dockerized-test";
-    private static String[] cmd;
-    private static String confPath;
-    private static boolean persistent = false;
-
-    private static DockerClient docker;
-    private static String containerId;
-    private static int hostPort = -1;
-    private static JsonRpcClient rpcClient;
-    private static Class<?> clientClass;
-    private static Class<?> normalizedClass;
-    private static Object client;
-    private static Object normalized;
+    private static final ExecutorService STARTER = Executors.newCachedThreadPool((r) -> {
+        final Thread thread = new Thread(r, "dockerized-start");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static volatile DaemonConfig config;
+    private static volatile DockerClient docker;
+    private static volatile ContainerPool pool;
+    private static volatile Map<String, ContainerPool> matrix = Collections.emptyMap();
+    private static CompletableFuture<ContainerPool> starting;
+    private static volatile RpcTape.Recording recording;
+    private static volatile ResourceSampler sampler;
 
     @Override
     public void beforeAll(final ExtensionContext context) throws Exception {
-        if (client != null) {
-            return;
+        init();
+        final ResourceSampler current = sampler;
+        if (current != null && isTopLevel(context)) {
+            current.begin(context.getRequiredTestClass().getName());
         }
-
-        getParameters();
-
-        docker = DockerClientBuilder.getInstance().build();
-
-        if (System.getProperty("containerLocation") == null) {
-            pullImage();
-            createContainer();
-            copyConfiguration();
-            startContainer();
-            getHostPortBinding();
-            Runtime.getRuntime()
-                    .addShutdownHook(new Thread(() -> {
-                        if (!persistent) {
-                            docker.stopContainerCmd(containerId).exec();
-                            docker.removeContainerCmd(containerId).exec();
-                            LOGGER.info("Stopped and removed container {}", containerId);
-                        } else {
-                            LOGGER.info("Left container {} alive", containerId);
-                        }
-                    }));
+        if (!config.isLeasePerMethod()) {
+            lease(context);
         }
+        restoreSnapshot(context);
+    }
 
-        final URL url = new URL("http://" + System.getProperty("containerHost", host) + ":" + System.getProperty("containerPort", Integer.toString(hostPort)));
-        LOGGER.info("Using URL {}", url.toString());
-        rpcClient = new JsonRpcHttpClient(url, Util.headers(rpcuser, rpcpass));
-        client = ProxyUtil.createClientProxy(
-                this.getClass().getClassLoader(),
-                clientClass,
-                (IJsonRpcClient) rpcClient);
-        if (normalizedClass != null) {
-            normalized = normalizedClass.getConstructor(clientClass).newInstance(client);
+    @Override
+    public void afterAll(final ExtensionContext context) {
+        final ResourceSampler current = sampler;
+        if (current != null && isTopLevel(context)) {
+            current.end(context.getRequiredTestClass().getName());
         }
-        Thread.sleep(2000l);
     }
 
     @Override
     public void beforeEach(final ExtensionContext context) throws Exception {
-        context.getStore(ExtensionContext.Namespace.GLOBAL).put(Dockerized.class, client);
+        if (isMatrixTest(context)) {
+            // Leased from the entry's pool by MatrixInvocation
+            return;
+        }
+        if (config.isLeasePerMethod()) {
+            lease(context);
+        }
+        restoreSnapshot(context);
+        context.getStore(ExtensionContext.Namespace.GLOBAL).put(Dockerized.class, getLease(context).getContainer().getClient());
     }
 
     @Override
     public boolean supportsParameter(final ParameterContext parameterContext,
             final ExtensionContext extensionContext)
             throws ParameterResolutionException {
-        return parameterContext.getParameter().getType().equals(clientClass)
-                || parameterContext.getParameter().getType().equals(normalizedClass);
+        if (config == null) {
+            return false;
+        }
+        final Class<?> type = parameterContext.getParameter().getType();
+        for (ContainerPool entry : matrix.values()) {
+            final DaemonConfig entryConfig = entry.getContainers().get(0).getConfig();
+            if (type.equals(entryConfig.getClientClass()) || type.equals(entryConfig.getNormalizedClass())
+                    || type.equals(entryConfig.getAsyncClass())) {
+                return true;
+            }
+        }
+        return type.equals(config.getClientClass())
+                || type.equals(config.getNormalizedClass())
+                || type.equals(DaemonContainer.class)
+                || type.equals(config.getAsyncClass())
+                || type.equals(RpcBatch.class)
+                || type.equals(AsyncClient.class)
+                || type.equals(LoadDriver.class)
+                || type.equals(ChainEvents.class);
     }
 
     @Override
     public Object resolveParameter(final ParameterContext parameterContext,
             final ExtensionContext extensionContext)
             throws ParameterResolutionException {
-        if (parameterContext.getParameter().getType().equals(clientClass)) {
-            return client;
+        final ContainerPool.Lease lease = getLease(extensionContext);
+        if (lease == null) {
+            throw new ParameterResolutionException("No container leased for " + extensionContext.getUniqueId());
+        }
+        final Node node = parameterContext.getParameter().getAnnotation(Node.class);
+        final DaemonContainer container;
+        try {
+            container = node == null
+                    ? lease.getContainer()
+                    : lease.getPool().getNode(node.value());
+        } catch (IllegalArgumentException ex) {
+            throw new ParameterResolutionException(ex.getMessage());
+        }
+        final Class<?> type = parameterContext.getParameter().getType();
+        if (type.equals(DaemonContainer.class)) {
+            return container;
+        }
+        if (type.equals(RpcBatch.class)) {
+            return container.batch(container.getConfig().getClientClass());
+        }
+        if (type.equals(AsyncClient.class)) {
+            return container.async(container.getConfig().getClientClass());
+        }
+        if (type.equals(container.getConfig().getAsyncClass())) {
+            return container.async(container.getConfig().getClientClass()).as(type);
+        }
+        if (type.equals(LoadDriver.class)) {
+            return LoadDriver.of(container.getClient());
+        }
+        if (type.equals(ChainEvents.class)) {
+            return container.events();
+        }
+        if (type.equals(container.getConfig().getClientClass())) {
+            return container.getClient();
+        }
+        return container.getNormalized();
+    }
+
+    @Override
+    public boolean supportsTestTemplate(final ExtensionContext context) {
+        return isMatrixTest(context);
+    }
+
+    @Override
+    public Stream<TestTemplateInvocationContext> provideTestTemplateInvocationContexts(
+            final ExtensionContext context) {
+        try {
+            init();
+        } catch (Exception ex) {
+            throw new IllegalStateException("Could not start containers", ex);
+        }
+        if (matrix.isEmpty()) {
+            return Stream.of(new MatrixInvocation(config.getName(), pool));
+        }
+        return matrix.entrySet()
+                .stream()
+                .map((e) -> new MatrixInvocation(e.getKey(), e.getValue()));
+    }
+
+    /**
+     * Returns the pool backing this extension, starting it if necessary.
+     *
+     * @return the container pool
+     * @throws Exception
+     */
+    public static ContainerPool getPool() throws Exception {
+        init();
+        return pool;
+    }
+
+    /**
+     * Begins loading the configuration and booting containers in the
+     * background, if that hasn't happened yet. The image check/pull and the
+     * configuration archive read run concurrently.
+     *
+     * @return a future completed once the pool is ready
+     */
+    public static synchronized CompletableFuture<ContainerPool> startAsync() {
+        if (starting != null) {
+            return starting;
+        }
+        LOGGER.debug("Starting containers in the background");
+        final Path metricsFile = Paths.get(System.getProperty("dockerizedMetricsFile", "target/dockerized-metrics.json"));
+        Runtime.getRuntime()
+                .addShutdownHook(new Thread(() -> {
+                    try {
+                        DockerizedMetrics.write(metricsFile);
+                    } catch (IOException ex) {
+                        LOGGER.warn("Failed to write metrics to {}", metricsFile, ex);
+                    }
+                }));
+        final CompletableFuture<Properties> props = CompletableFuture.supplyAsync(
+                unchecked(DaemonConfig::loadProperties), STARTER);
+        final CompletableFuture<byte[]> archive = CompletableFuture.supplyAsync(
+                unchecked(DaemonConfig::readConfArchive), STARTER);
+        final CompletableFuture<DaemonConfig> loaded = props.thenCombine(archive,
+                (p, a) -> unchecked(() -> new DaemonConfig(p, a)).get());
+
+        final String tape = System.getProperty("dockerizedTape");
+        final Path tapeFile = Paths.get(System.getProperty("dockerizedTapeFile", "src/test/resources/dockerized.tape"));
+        if ("replay".equals(tape)) {
+            starting = loaded.thenApplyAsync((c) -> unchecked(() -> ContainerPool.replay(c, RpcTape.open(tapeFile))).get(),
+                    STARTER);
+            return starting;
+        } else if ("record".equals(tape)) {
+            final RpcTape.Recording recorder = new RpcTape.Recording();
+            Runtime.getRuntime()
+                    .addShutdownHook(new Thread(() -> {
+                        try {
+                            recorder.write(tapeFile);
+                            LOGGER.info("Recorded {} requests to {}", recorder.size(), tapeFile.toAbsolutePath());
+                        } catch (IOException ex) {
+                            LOGGER.error("Failed to write tape {}", tapeFile, ex);
+                        }
+                    }));
+            recording = recorder;
+        }
+
+        final String location = System.getProperty("containerLocation");
+        if (location != null) {
+            starting = loaded.thenApplyAsync((c) -> unchecked(() -> {
+                final String[] parts = location.split(":");
+                final String host = System.getProperty("containerHost", parts[0]);
+                final String port = System.getProperty("containerPort", parts.length > 1 ? parts[1] : c.getPortSpec());
+                return ContainerPool.external(DaemonContainer.external(c, host, Integer.parseInt(port)));
+            }).get(), STARTER);
+            return starting;
+        }
+
+        final CompletableFuture<String> imageId = props.thenApplyAsync((p) -> unchecked(() -> {
+            docker = DockerClientBuilder.getInstance().build();
+            if (p.containsKey("matrix")) {
+                // Each entry pulls its own image
+                return null;
+            }
+            final long start = System.nanoTime();
+            final String id = ContainerPool.pullImage(docker, p.getProperty("image"));
+            DockerizedMetrics.recordPhase("pullImage", System.nanoTime() - start);
+            return id;
+        }).get(), STARTER);
+        starting = loaded.thenCombineAsync(imageId, (loadedConfig, id) -> unchecked(() -> {
+            final DaemonConfig c = loadedConfig.usesEvents()
+                    ? loadedConfig.withEvents(ChainEvents.listen(docker, loadedConfig))
+                    : loadedConfig;
+            final List<DaemonContainer> containers = new ArrayList<>();
+            final ContainerPool started;
+            if (c.getMatrix().isEmpty()) {
+                started = startPool(c, id);
+                containers.addAll(started.getContainers());
+            } else {
+                final Map<String, ContainerPool> pools = startMatrix(c);
+                for (ContainerPool entry : pools.values()) {
+                    containers.addAll(entry.getContainers());
+                }
+                started = pools.values().iterator().next();
+                matrix = pools;
+            }
+            if (!"false".equals(System.getProperty("dockerizedStats"))) {
+                startSampler(containers);
+            }
+            return started;
+        }).get(), STARTER);
+        return starting;
+    }
+
+    private static ContainerPool startPool(final DaemonConfig c, final String imageId) throws Exception {
+        if (c.isShared()) {
+            return SharedDaemon.start(c, docker, imageId);
+        }
+        final ContainerPool started = ContainerPool.start(c, docker, imageId);
+        Runtime.getRuntime()
+                .addShutdownHook(new Thread(started::shutdown));
+        return started;
+    }
+
+    /**
+     * Pulls and boots every matrix entry concurrently, so the whole matrix is
+     * ready in the time of its slowest image.
+     */
+    private static Map<String, ContainerPool> startMatrix(final DaemonConfig c) throws Exception {
+        final Map<String, CompletableFuture<ContainerPool>> futures = new LinkedHashMap<>();
+        for (String entry : c.getMatrix()) {
+            final DaemonConfig entryConfig = c.forMatrix(entry);
+            futures.put(entry, CompletableFuture.supplyAsync(unchecked(() -> {
+                final long start = System.nanoTime();
+                final String id = ContainerPool.pullImage(docker, entryConfig.getImage());
+                DockerizedMetrics.recordPhase("pullImage", System.nanoTime() - start);
+                return startPool(entryConfig, id);
+            }), STARTER));
+        }
+        final Map<String, ContainerPool> pools = new LinkedHashMap<>();
+        for (Map.Entry<String, CompletableFuture<ContainerPool>> future : futures.entrySet()) {
+            pools.put(future.getKey(), future.getValue().join());
+        }
+        LOGGER.info("Started image matrix {}", pools.keySet());
+        return Collections.unmodifiableMap(pools);
+    }
+
+    private static void startSampler(final List<DaemonContainer> containers) {
+        final Path statsFile = Paths.get(System.getProperty("dockerizedStatsFile", "target/dockerized-resources.json"));
+        final ResourceSampler following = ResourceSampler.start(docker, containers);
+        Runtime.getRuntime()
+                .addShutdownHook(new Thread(() -> {
+                    try {
+                        following.write(statsFile);
+                    } catch (IOException ex) {
+                        LOGGER.warn("Failed to write resource usage to {}", statsFile, ex);
+                    }
+                }));
+        sampler = following;
+    }
+
+    private static void init() throws Exception {
+        if (pool != null) {
+            return;
+        }
+        final ContainerPool started;
+        try {
+            started = startAsync().join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof Exception) {
+                throw (Exception) ex.getCause();
+            }
+            throw ex;
+        }
+        synchronized (Dockerized.class) {
+            if (pool == null) {
+                config = started.getContainers().get(0).getConfig();
+                pool = started;
+            }
+        }
+    }
+
+    /**
+     * @return whether RPC exchanges are currently being added to a tape
+     */
+    static boolean isRecording() {
+        return recording != null;
+    }
+
+    /**
+     * Wraps the RPC client used by the resolved client proxies, to time and
+     * possibly record exchanges.
+     */
+    static IJsonRpcClient decorate(final IJsonRpcClient client) {
+        final RpcTape.Recording current = recording;
+        return new TimingRpcClient(current == null ? client : new RecordingRpcClient(client, current));
+    }
+
+    private static <T> Supplier<T> unchecked(final Callable<T> callable) {
+        return () -> {
+            try {
+                return callable.call();
+            } catch (RuntimeException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                throw new CompletionException(ex);
+            }
+        };
+    }
+
+    /**
+     * Leases a container for the given context, unless an enclosing context
+     * (e.g. the outer class of a `@Nested` test) already holds one.
+     */
+    private static void lease(final ExtensionContext context) throws InterruptedException {
+        if (getLease(context) != null) {
+            return;
+        }
+        final ContainerPool.Lease lease = pool.lease();
+        context.getStore(NAMESPACE).put(LEASE, lease);
+        sample(context, lease);
+    }
+
+    /**
+     * Charges the leased containers to the outermost test class.
+     */
+    private static void sample(final ExtensionContext context, final ContainerPool.Lease lease) {
+        final ResourceSampler current = sampler;
+        if (current == null) {
+            return;
+        }
+        ExtensionContext outermost = context;
+        while (!isTopLevel(outermost)) {
+            outermost = outermost.getParent().get();
+        }
+        current.attach(outermost.getRequiredTestClass().getName(), lease.getContainers());
+    }
+
+    /**
+     * Applies a {@link RestoreSnapshot} found on the context's own element.
+     * With per-method leases, a class-level annotation applies to each method.
+     */
+    private static void restoreSnapshot(final ExtensionContext context) throws Exception {
+        restoreSnapshot(context, config.isLeasePerMethod());
+    }
+
+    /**
+     * @param ownLease whether a method holds its own lease, so a class-level
+     * annotation applies to it
+     */
+    private static void restoreSnapshot(final ExtensionContext context, final boolean ownLease) throws Exception {
+        final boolean isMethod = context.getTestMethod().isPresent();
+        if (!isMethod && config.isLeasePerMethod()) {
+            return;
+        }
+        RestoreSnapshot restore = context.getElement()
+                .map((e) -> e.getAnnotation(RestoreSnapshot.class))
+                .orElse(null);
+        if (restore == null && isMethod && ownLease) {
+            restore = context.getRequiredTestClass().getAnnotation(RestoreSnapshot.class);
+        }
+        if (restore == null) {
+            return;
+        }
+        final DaemonContainer container = getLease(context).getContainer();
+        if (!container.hasSnapshot(restore.value())) {
+            LOGGER.info("Snapshot {} not taken yet, skipping restore", restore.value());
+            return;
+        }
+        container.restore(restore.value());
+    }
+
+    private static boolean isMatrixTest(final ExtensionContext context) {
+        return context.getTestMethod()
+                .map((m) -> m.isAnnotationPresent(MatrixTest.class))
+                .orElse(false);
+    }
+
+    /**
+     * Nested classes are accounted to their outermost class.
+     */
+    private static boolean isTopLevel(final ExtensionContext context) {
+        return !context.getParent().flatMap(ExtensionContext::getTestClass).isPresent();
+    }
+
+    private static ContainerPool.Lease getLease(final ExtensionContext context) {
+        final ContainerPool.Lease entry = context.getStore(NAMESPACE).get(MATRIX_LEASE, ContainerPool.Lease.class);
+        if (entry != null) {
+            return entry;
+        }
+        return context.getStore(NAMESPACE).get(LEASE, ContainerPool.Lease.class);
+    }
+
+    /**
+     * One invocation of a {@link MatrixTest}, which leases a container from
+     * its entry's pool for the duration of the method. When the class already
+     * holds a lease from that pool, the invocation uses it instead, since a
+     * second lease would wait on itself with `pool.size=1`.
+     */
+    private static final class MatrixInvocation implements TestTemplateInvocationContext, BeforeEachCallback {
+        private final String entry;
+        private final ContainerPool entryPool;
+
+        MatrixInvocation(final String entry, final ContainerPool entryPool) {
+            this.entry = entry;
+            this.entryPool = entryPool;
+        }
+
+        @Override
+        public String getDisplayName(final int invocationIndex) {
+            return "[" + entry + "] " + entryPool.getContainers().get(0).getConfig().getImage();
+        }
+
+        @Override
+        public List<Extension> getAdditionalExtensions() {
+            return Collections.singletonList(this);
+        }
+
+        @Override
+        public void beforeEach(final ExtensionContext context) throws Exception {
+            final ContainerPool.Lease held = getLease(context);
+            final boolean ownLease = held == null || held.getPool() != entryPool;
+            if (ownLease) {
+                final ContainerPool.Lease lease = entryPool.lease();
+                context.getStore(NAMESPACE).put(MATRIX_LEASE, lease);
+                sample(context, lease);
+            }
+            restoreSnapshot(context, ownLease);
+            context.getStore(ExtensionContext.Namespace.GLOBAL)
+                    .put(Dockerized.class, getLease(context).getContainer().getClient());
         }
-        return normalized;
     }
     
     /**
@@ -131,7 +526,7 @@ public class Dockerized implements BeforeAllCallback, BeforeEachCallback, Parame
      * @return the command line broken into strings.
      * An empty or null toProcess parameter results in a zero sized array.
      */
-    private static String[] parseCommand(final String cmd) {
+    static String[] parseCommand(final String cmd) {
         if (cmd == null || cmd.length() == 0) {
             //no command? no string
             return new String[0];
@@ -191,151 +586,4 @@ public class Dockerized implements BeforeAllCallback, BeforeEachCallback, Parame
         }
         return result.toArray(new String[result.size()]);
     }
-
-    private void getParameters() throws IOException, ClassNotFoundException {
-        if (props != null) {
-            return;
-        }
-
-        props = new Properties();
-        try (InputStream is = Dockerized.class.getResourceAsStream("/docker.properties")) {
-            if (is == null) {
-                throw new RuntimeException("Unable to load docker properties. Make sure `docker.properties` exists in src/test/resources");
-            }
-            props.load(is);
-        }
-
-        image = props.getProperty("image");
-        portStr = props.getProperty("port");
-        portNum = Integer.parseInt(portStr);
-        rpcuser = props.getProperty("rpcuser", "user");
-        rpcpass = props.getProperty("rpcpass", "pass");
-        name = props.getProperty("name", name);
-        if (props.containsKey("cmd")) {
-            cmd = parseCommand(props.getProperty("cmd"));
-            LOGGER.info("Command: {}", cmd);
-        }
-        confPath = props.getProperty("conf");
-        clientClass = Class.forName(props.getProperty("class"));
-        if (props.containsKey("normalized")) {
-            normalizedClass = Class.forName(props.getProperty("normalized"));
-        }
-        persistent = Boolean.parseBoolean(props.getProperty("persistent", "false"));
-    }
-
-    /**
-     * Pulls down the requested image if it doesn't already exist locally.
-     *
-     * @throws InterruptedException
-     */
-    private void pullImage() throws InterruptedException {
-        final List<Image> img = docker.listImagesCmd()
-                .withImageNameFilter(image)
-                .exec();
-        if (img.isEmpty()) {
-            docker.pullImageCmd(image)
-                    .exec(new PullImageResultCallback())
-                    .awaitCompletion();
-        }
-    }
-
-    /**
-     * Create the container if it doesn't already exist
-     */
-    private void createContainer() {
-        try {
-            final List<Container> containers = docker.listContainersCmd()
-                    .withShowAll(true)
-                    .exec();
-            containerId = docker.inspectContainerCmd(name)
-                    .exec()
-                    .getId();
-            LOGGER.info("Container {} already exists with id {}", name, containerId);
-            return;
-        } catch (NotFoundException ex) {}
-
-        final CreateContainerCmd result = docker.createContainerCmd(image)
-                .withStdInOnce(false)
-                .withStdinOpen(false)
-                .withPortSpecs(portStr)
-                .withExposedPorts(ExposedPort.tcp(portNum))
-                .withPortBindings(new PortBinding(Ports.Binding.bindIp("0.0.0.0"), ExposedPort.tcp(portNum)))
-                .withName(name);
-        if (cmd != null) {
-            result.withCmd(cmd);
-        }
-        containerId = result.exec()
-                .getId();
-        LOGGER.info("Built container {}", containerId);
-    }
-
-    private void copyConfiguration() throws IOException {
-        try (InputStream stream = this.getClass().getResourceAsStream("/conf.tar.gz")) {
-            if (stream == null) {
-                LOGGER.warn("Could not retrieve conf.tar.gz. Ensure it exists in src/test/resources");
-                return;
-            }
-            docker.copyArchiveToContainerCmd(containerId)
-                    .withTarInputStream(stream)
-                    .withRemotePath(confPath)
-                    .exec();
-        }
-    }
-
-    private void startContainer() {
-        try {
-            docker.startContainerCmd(containerId)
-                    .exec();
-            LOGGER.info("Started container {}", containerId);
-        } catch (NotModifiedException ex) {
-            LOGGER.info("Container {} already running", containerId);
-        }
-    }
-
-    private void getHostPortBinding() throws IOException {
-        final NetworkSettings network = docker.inspectContainerCmd(containerId)
-                .exec()
-                .getNetworkSettings();
-
-        // Grab the host of the docker container
-        if (System.getProperty("dockerizedByIP", "false").equals("true")) {
-            LOGGER.debug("Connecting to container by IP");
-            for (Map.Entry<String, ContainerNetwork> net : network.getNetworks().entrySet()) {
-                LOGGER.debug("Network {} IP {}", net.getValue().getNetworkID(), net.getValue().getIpAddress());
-                host = net.getValue().getIpAddress();
-            }
-            LOGGER.info("Using host {}", host);
-        } else if (System.getProperty("dockerizedHost") != null) {
-            String urlStr = System.getProperty("dockerizedHost");
-            if (urlStr.contains("://")) {
-                urlStr = urlStr.split("://")[1];
-            }
-            final URL netUrl = new URL("http://" + urlStr);
-            host = netUrl.getHost();
-        }
-
-        if (System.getProperty("dockerizedUseContainerPort", "false").equals("true")) {
-            hostPort = portNum;
-            LOGGER.info("Using container port {}", hostPort);
-            return;
-        }
-
-        // Otherwise, grab the port bound to the exposed docker port
-        final Map<ExposedPort, Ports.Binding[]> bindings = network.getPorts()
-                .getBindings();
-        for (Map.Entry<ExposedPort, Ports.Binding[]> port : bindings.entrySet()) {
-            if (port.getKey().getPort() == portNum) {
-                if (port.getValue() == null || port.getValue().length != 1) {
-                    throw new RuntimeException("Found " + port.getValue().length + " bound ports. Expected 1");
-                }
-                hostPort = Integer.parseInt(port.getValue()[0].getHostPortSpec());
-            }
-        }
-
-        if (hostPort < 0) {
-            throw new RuntimeException("RPC port " + portNum + " not bound to host");
-        }
-        LOGGER.info("RPC port {} bound to {}", portNum, hostPort);
-
-    }
 }
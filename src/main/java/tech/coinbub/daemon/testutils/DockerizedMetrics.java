@@ -0,0 +1,202 @@
+package tech.coinbub.daemon.testutils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timings collected by {@link Dockerized}: how long each container lifecycle
+ * phase took, and the latency of every RPC method called through the
+ * resolved client proxies.
+ *
+ * Written as JSON at shutdown to `dockerizedMetricsFile`, which defaults to
+ * `target/dockerized-metrics.json`.
+ */
+public final class DockerizedMetrics {
+    private static final ConcurrentMap<String, LatencyHistogram> PHASES = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, MethodTiming> METHODS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Traffic> TRAFFIC = new ConcurrentHashMap<>();
+
+    private DockerizedMetrics() {}
+
+    /**
+     * A unit of work whose duration is recorded.
+     */
+    @FunctionalInterface
+    public interface Phase {
+        void run() throws Exception;
+    }
+
+    /**
+     * Runs and times a lifecycle phase.
+     *
+     * @param name the phase name, e.g. `createContainer`
+     * @param phase the work to time
+     * @throws Exception if the phase does; its duration is still recorded
+     */
+    public static void time(final String name, final Phase phase) throws Exception {
+        final long start = System.nanoTime();
+        try {
+            phase.run();
+        } finally {
+            recordPhase(name, System.nanoTime() - start);
+        }
+    }
+
+    public static void recordPhase(final String name, final long nanos) {
+        histogram(PHASES, name).record(nanos);
+    }
+
+    public static void recordCall(final String method, final long nanos, final boolean failed) {
+        MethodTiming timing = METHODS.get(method);
+        if (timing == null) {
+            timing = METHODS.computeIfAbsent(method, (m) -> new MethodTiming());
+        }
+        timing.latency.record(nanos);
+        if (failed) {
+            timing.errors.increment();
+        }
+    }
+
+    /**
+     * Counts traffic passing through a {@link ShapingProxy}.
+     *
+     * @param method the RPC method the traffic belongs to
+     * @param requests round trips started
+     * @param sent bytes sent to the daemon
+     * @param received bytes received from the daemon
+     */
+    public static void recordTraffic(final String method, final long requests, final long sent,
+            final long received) {
+        Traffic traffic = TRAFFIC.get(method);
+        if (traffic == null) {
+            traffic = TRAFFIC.computeIfAbsent(method, (m) -> new Traffic());
+        }
+        traffic.requests.add(requests);
+        traffic.sent.add(sent);
+        traffic.received.add(received);
+    }
+
+    /**
+     * @return the timings of each lifecycle phase, summed over all containers
+     */
+    public static Map<String, LatencyHistogram> getPhases() {
+        return Collections.unmodifiableMap(PHASES);
+    }
+
+    /**
+     * @return the timings of each RPC method
+     */
+    public static Map<String, MethodTiming> getMethods() {
+        return Collections.unmodifiableMap(METHODS);
+    }
+
+    /**
+     * @return the traffic of each RPC method, if shaping is enabled
+     */
+    public static Map<String, Traffic> getTraffic() {
+        return Collections.unmodifiableMap(TRAFFIC);
+    }
+
+    /**
+     * Writes all timings as JSON.
+     *
+     * @param path the file to write
+     * @throws IOException
+     */
+    public static void write(final Path path) throws IOException {
+        final Map<String, Object> phases = new TreeMap<>();
+        for (Map.Entry<String, LatencyHistogram> phase : PHASES.entrySet()) {
+            phases.put(phase.getKey(), summarize(phase.getValue()));
+        }
+        final Map<String, Object> methods = new TreeMap<>();
+        for (Map.Entry<String, MethodTiming> method : METHODS.entrySet()) {
+            final Map<String, Object> summary = summarize(method.getValue().getLatency());
+            summary.put("errors", method.getValue().getErrors());
+            methods.put(method.getKey(), summary);
+        }
+        final Map<String, Object> report = new LinkedHashMap<>();
+        report.put("phases", phases);
+        report.put("methods", methods);
+        if (!TRAFFIC.isEmpty()) {
+            final Map<String, Object> traffic = new TreeMap<>();
+            for (Map.Entry<String, Traffic> method : TRAFFIC.entrySet()) {
+                final Map<String, Object> summary = new LinkedHashMap<>();
+                summary.put("requests", method.getValue().getRequests());
+                summary.put("bytesSent", method.getValue().getBytesSent());
+                summary.put("bytesReceived", method.getValue().getBytesReceived());
+                traffic.put(method.getKey(), summary);
+            }
+            report.put("traffic", traffic);
+        }
+
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        new ObjectMapper()
+                .enable(SerializationFeature.INDENT_OUTPUT)
+                .writeValue(path.toFile(), report);
+    }
+
+    static Map<String, Object> summarize(final LatencyHistogram histogram) {
+        final Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", histogram.getCount());
+        summary.put("meanMs", histogram.getMeanMillis());
+        summary.put("p50Ms", histogram.getPercentileMillis(50));
+        summary.put("p99Ms", histogram.getPercentileMillis(99));
+        summary.put("maxMs", histogram.getMax(TimeUnit.MICROSECONDS) / 1000.0);
+        return summary;
+    }
+
+    private static LatencyHistogram histogram(final ConcurrentMap<String, LatencyHistogram> map, final String name) {
+        final LatencyHistogram existing = map.get(name);
+        return existing != null ? existing : map.computeIfAbsent(name, (n) -> new LatencyHistogram());
+    }
+
+    /**
+     * Latency and error count of one RPC method.
+     */
+    public static final class MethodTiming {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        public long getErrors() {
+            return errors.sum();
+        }
+    }
+
+    /**
+     * Round trips and bytes of one RPC method, as seen by the proxy.
+     */
+    public static final class Traffic {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder sent = new LongAdder();
+        private final LongAdder received = new LongAdder();
+
+        public long getRequests() {
+            return requests.sum();
+        }
+
+        public long getBytesSent() {
+            return sent.sum();
+        }
+
+        public long getBytesReceived() {
+            return received.sum();
+        }
+    }
+}
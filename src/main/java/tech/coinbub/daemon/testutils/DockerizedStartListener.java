@@ -0,0 +1,60 @@
+package tech.coinbub.daemon.testutils;
+
+import java.util.Arrays;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.platform.engine.TestSource;
+import org.junit.platform.engine.support.descriptor.ClassSource;
+import org.junit.platform.launcher.TestExecutionListener;
+import org.junit.platform.launcher.TestIdentifier;
+import org.junit.platform.launcher.TestPlan;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Kicks off {@link Dockerized#startAsync()} as soon as the JUnit Platform
+ * knows the test plan, so that containers boot while other tests run and
+ * the first `@ExtendWith(Dockerized.class)` class only has to wait for the
+ * remainder.
+ *
+ * Registered through `META-INF/services`; disable with
+ * `-DdockerizedEagerStart=false`.
+ */
+public class DockerizedStartListener implements TestExecutionListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DockerizedStartListener.class);
+
+    @Override
+    public void testPlanExecutionStarted(final TestPlan testPlan) {
+        if (!Boolean.parseBoolean(System.getProperty("dockerizedEagerStart", "true"))) {
+            return;
+        }
+        for (TestIdentifier root : testPlan.getRoots()) {
+            for (TestIdentifier identifier : testPlan.getDescendants(root)) {
+                if (usesDockerized(identifier)) {
+                    LOGGER.info("Test plan uses Dockerized, starting containers early");
+                    Dockerized.startAsync();
+                    return;
+                }
+            }
+        }
+    }
+
+    private static boolean usesDockerized(final TestIdentifier identifier) {
+        final TestSource source = identifier.getSource().orElse(null);
+        if (!(source instanceof ClassSource)) {
+            return false;
+        }
+        try {
+            Class<?> type = Class.forName(((ClassSource) source).getClassName(), false,
+                    Thread.currentThread().getContextClassLoader());
+            for (; type != null; type = type.getEnclosingClass()) {
+                final ExtendWith extendWith = type.getAnnotation(ExtendWith.class);
+                if (extendWith != null && Arrays.asList(extendWith.value()).contains(Dockerized.class)) {
+                    return true;
+                }
+            }
+        } catch (ClassNotFoundException | LinkageError ex) {
+            LOGGER.debug("Could not inspect {}", source, ex);
+        }
+        return false;
+    }
+}
@@ -0,0 +1,182 @@
+package tech.coinbub.daemon.testutils;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.hamcrest.BaseMatcher;
+import org.hamcrest.Description;
+import org.hamcrest.Factory;
+import org.hamcrest.Matcher;
+
+/**
+ * Collection-level matchers for very large daemon responses. Items are
+ * checked in parallel on the fork-join pool (or one by one, as they arrive,
+ * for streamed sources), and evaluation stops at the first failure for
+ * "every" or the first hit for "any".
+ *
+ * The actual value may be a {@link List}, any {@link Iterable}, an
+ * {@link Iterator} or a {@link Stream}, e.g. one returned by
+ * {@link DaemonContainer#stream}. Iterators and streams are consumed once and
+ * closed. The item matcher must be thread-safe for parallel use, which
+ * {@link BeanMatcher} and {@link BeanPropertyMatcher} are.
+ *
+ * @param <T> the item type
+ */
+public final class ItemsMatcher<T> extends BaseMatcher<Object> {
+    private final Matcher<? super T> itemMatcher;
+    private final boolean every;
+    private final boolean parallel;
+    private volatile Failure failure;
+
+    private ItemsMatcher(final Matcher<? super T> itemMatcher, final boolean every, final boolean parallel) {
+        this.itemMatcher = itemMatcher;
+        this.every = every;
+        this.parallel = parallel;
+    }
+
+    /**
+     * Every item must match; checked in parallel.
+     */
+    @Factory
+    public static <T> ItemsMatcher<T> everyItemInParallel(final Matcher<? super T> itemMatcher) {
+        return new ItemsMatcher<>(itemMatcher, true, true);
+    }
+
+    /**
+     * At least one item must match; checked in parallel.
+     */
+    @Factory
+    public static <T> ItemsMatcher<T> hasItemInParallel(final Matcher<? super T> itemMatcher) {
+        return new ItemsMatcher<>(itemMatcher, false, true);
+    }
+
+    /**
+     * Every item must match; checked in order as items arrive.
+     */
+    @Factory
+    public static <T> ItemsMatcher<T> everyStreamedItem(final Matcher<? super T> itemMatcher) {
+        return new ItemsMatcher<>(itemMatcher, true, false);
+    }
+
+    /**
+     * At least one item must match; checked in order as items arrive.
+     */
+    @Factory
+    public static <T> ItemsMatcher<T> hasStreamedItem(final Matcher<? super T> itemMatcher) {
+        return new ItemsMatcher<>(itemMatcher, false, false);
+    }
+
+    @Override
+    public boolean matches(final Object actual) {
+        failure = null;
+        if (actual instanceof List && actual instanceof RandomAccess) {
+            return matchesList((List<?>) actual);
+        }
+        try (Stream<?> items = toStream(actual)) {
+            if (items == null) {
+                failure = new Failure(actual, -1, null, "was not a collection or stream");
+                return false;
+            }
+            if (!every) {
+                if (items.anyMatch(itemMatcher::matches)) {
+                    return true;
+                }
+                failure = new Failure(actual, -1, null, "no item matched");
+                return false;
+            }
+            final Optional<Object[]> failed = items
+                    .filter((item) -> !itemMatcher.matches(item))
+                    .map((item) -> new Object[] {item})
+                    .findAny();
+            if (failed.isPresent()) {
+                failure = new Failure(actual, -1, failed.get()[0], null);
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Random-access lists split evenly and let us report the failing index.
+     */
+    private boolean matchesList(final List<?> list) {
+        IntStream indices = IntStream.range(0, list.size());
+        if (parallel) {
+            indices = indices.parallel();
+        }
+        if (!every) {
+            if (indices.anyMatch((i) -> itemMatcher.matches(list.get(i)))) {
+                return true;
+            }
+            failure = new Failure(list, -1, null, "no item matched");
+            return false;
+        }
+        final OptionalInt failed = parallel
+                ? indices.filter((i) -> !itemMatcher.matches(list.get(i))).findAny()
+                : indices.filter((i) -> !itemMatcher.matches(list.get(i))).findFirst();
+        if (failed.isPresent()) {
+            failure = new Failure(list, failed.getAsInt(), list.get(failed.getAsInt()), null);
+            return false;
+        }
+        return true;
+    }
+
+    private Stream<?> toStream(final Object actual) {
+        if (actual instanceof Stream) {
+            final Stream<?> stream = (Stream<?>) actual;
+            return parallel ? stream.parallel() : stream.sequential();
+        }
+        if (actual instanceof Iterable) {
+            return StreamSupport.stream(((Iterable<?>) actual).spliterator(), parallel);
+        }
+        if (actual instanceof Iterator) {
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize((Iterator<?>) actual,
+                    Spliterator.ORDERED), parallel);
+        }
+        return null;
+    }
+
+    @Override
+    public void describeTo(final Description description) {
+        description.appendText(every ? "every item " : "an item ")
+                .appendDescriptionOf(itemMatcher);
+    }
+
+    @Override
+    public void describeMismatch(final Object actual, final Description description) {
+        final Failure current = failure;
+        if (current == null || current.actual != actual) {
+            description.appendText("was ").appendValue(actual);
+            return;
+        }
+        if (current.message != null) {
+            description.appendText(current.message);
+            return;
+        }
+        description.appendText(current.index >= 0 ? "item " + current.index + " " : "an item ");
+        // Re-run the item matcher so stateful matchers describe this item
+        itemMatcher.matches(current.item);
+        itemMatcher.describeMismatch(current.item, description);
+    }
+
+    private static final class Failure {
+        private final Object actual;
+        private final int index;
+        private final Object item;
+        private final String message;
+
+        Failure(final Object actual, final int index, final Object item, final String message) {
+            this.actual = actual;
+            this.index = index;
+            this.item = item;
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package tech.coinbub.daemon.testutils;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.googlecode.jsonrpc4j.JsonRpcClientException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Decodes the `result` array of a JSON-RPC response one element at a time,
+ * so items can be checked while the rest of the response is still arriving
+ * and earlier items can be collected.
+ */
+public final class JsonItems {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private JsonItems() {}
+
+    /**
+     * Streams the elements of the response's `result` array. `null` elements
+     * are passed through as null. Closing the stream closes `in`.
+     *
+     * @param <T> the element type
+     * @param in the response body
+     * @param type the element type
+     * @return a sequential, lazily decoded stream
+     * @throws IOException if the response is malformed
+     * @throws JsonRpcClientException if the response holds an error
+     */
+    public static <T> Stream<T> streamResult(final InputStream in, final Class<T> type) throws IOException {
+        final JsonParser parser = MAPPER.getFactory().createParser(in);
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expected a JSON-RPC response object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = parser.getCurrentName();
+                final JsonToken value = parser.nextToken();
+                if ("result".equals(name) && value == JsonToken.START_ARRAY) {
+                    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+                            new ElementIterator<>(parser, type),
+                            Spliterator.ORDERED), false)
+                            .onClose(() -> close(parser));
+                } else if ("result".equals(name) && value != JsonToken.VALUE_NULL) {
+                    throw new IOException("Expected result to be an array but got " + value);
+                } else if ("error".equals(name) && value != JsonToken.VALUE_NULL) {
+                    final JsonNode error = MAPPER.readTree(parser);
+                    throw new JsonRpcClientException(error.path("code").asInt(),
+                            error.path("message").asText(),
+                            error.get("data"));
+                }
+                parser.skipChildren();
+            }
+            throw new IOException("Response has no result");
+        } catch (IOException | RuntimeException ex) {
+            parser.close();
+            throw ex;
+        }
+    }
+
+    private static void close(final JsonParser parser) {
+        try {
+            parser.close();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static final class ElementIterator<T> implements Iterator<T> {
+        private final JsonParser parser;
+        private final Class<T> type;
+        private JsonToken next;
+
+        ElementIterator(final JsonParser parser, final Class<T> type) {
+            this.parser = parser;
+            this.type = type;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                try {
+                    next = parser.nextToken();
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+            return next != null && next != JsonToken.END_ARRAY;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            next = null;
+            try {
+                return MAPPER.readValue(parser, type);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package tech.coinbub.daemon.testutils;
+
+import com.googlecode.jsonrpc4j.JsonRpcClientException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Drives one client call from many concurrent callers for a fixed time and
+ * reports throughput, latency and errors.
+ *
+ * <pre>
+ * &#64;Test
+ * public void loadTest(final LoadDriver&lt;Bitcoind&gt; load) throws Exception {
+ *     final LoadReport report = load.concurrency(32)
+ *             .rate(500)
+ *             .duration(10, TimeUnit.SECONDS)
+ *             .run((c) -&gt; c.getblockcount());
+ *     assertThat(report.getErrors(), is(0L));
+ * }
+ * </pre>
+ *
+ * When a target rate is set, calls are scheduled on a fixed timeline and
+ * latency is measured from each call's scheduled start. Time spent queued
+ * behind a slow daemon therefore shows up in the percentiles instead of being
+ * hidden.
+ *
+ * @param <T> the client interface
+ */
+public final class LoadDriver<T> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadDriver.class);
+
+    private final T client;
+    private int concurrency = 8;
+    private double rate = 0;
+    private long durationNanos = TimeUnit.SECONDS.toNanos(10);
+    private long warmupNanos = 0;
+
+    private LoadDriver(final T client) {
+        this.client = client;
+    }
+
+    public static <T> LoadDriver<T> of(final T client) {
+        return new LoadDriver<>(client);
+    }
+
+    /**
+     * @param callers number of concurrent callers, i.e. maximum calls in flight
+     * @return this driver
+     */
+    public LoadDriver<T> concurrency(final int callers) {
+        if (callers < 1) {
+            throw new IllegalArgumentException("concurrency must be at least 1");
+        }
+        this.concurrency = callers;
+        return this;
+    }
+
+    /**
+     * @param callsPerSecond target rate across all callers, or 0 for as fast
+     * as possible
+     * @return this driver
+     */
+    public LoadDriver<T> rate(final double callsPerSecond) {
+        this.rate = callsPerSecond;
+        return this;
+    }
+
+    public LoadDriver<T> duration(final long amount, final TimeUnit unit) {
+        this.durationNanos = unit.toNanos(amount);
+        return this;
+    }
+
+    /**
+     * @param amount time to run before measuring starts
+     * @param unit the unit of `amount`
+     * @return this driver
+     */
+    public LoadDriver<T> warmup(final long amount, final TimeUnit unit) {
+        this.warmupNanos = unit.toNanos(amount);
+        return this;
+    }
+
+    /**
+     * Runs the load and blocks until it is finished.
+     *
+     * @param call the call each caller makes repeatedly
+     * @return the measurements
+     * @throws InterruptedException
+     */
+    public LoadReport run(final Consumer<T> call) throws InterruptedException {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder calls = new LongAdder();
+        final ConcurrentMap<String, LongAdder> errors = new ConcurrentHashMap<>();
+        final long start = System.nanoTime();
+        final long measureFrom = start + warmupNanos;
+        final long deadline = measureFrom + durationNanos;
+        final long interval = rate > 0 ? (long) (1e9 / rate) : 0;
+        final AtomicLong nextSlot = new AtomicLong(start);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(concurrency, (r) -> {
+            final Thread thread = new Thread(r, "load-driver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final List<Future<?>> workers = new ArrayList<>(concurrency);
+        try {
+            for (int i = 0; i < concurrency; i++) {
+                workers.add(executor.submit(() -> {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        long scheduled = System.nanoTime();
+                        if (interval > 0) {
+                            scheduled = nextSlot.getAndAdd(interval);
+                            final long wait = scheduled - System.nanoTime();
+                            if (wait > 0) {
+                                LockSupport.parkNanos(wait);
+                            }
+                        }
+                        if (scheduled >= deadline) {
+                            return;
+                        }
+                        String error = null;
+                        try {
+                            call.accept(client);
+                        } catch (RuntimeException ex) {
+                            error = describe(ex);
+                        }
+                        if (scheduled < measureFrom) {
+                            continue;
+                        }
+                        latency.record(System.nanoTime() - scheduled);
+                        calls.increment();
+                        if (error != null) {
+                            errors.computeIfAbsent(error, (e) -> new LongAdder()).increment();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                try {
+                    worker.get();
+                } catch (ExecutionException ex) {
+                    throw new IllegalStateException("Load worker failed", ex.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        final long elapsed = Math.min(System.nanoTime(), deadline) - measureFrom;
+        final LoadReport report = new LoadReport(calls.sum(), elapsed, latency, errors);
+        LOGGER.info("{}", report);
+        return report;
+    }
+
+    /**
+     * Names an error by its root cause, unwrapping proxy exceptions and
+     * including JSON-RPC error codes.
+     */
+    private static String describe(final Throwable ex) {
+        Throwable cause = ex;
+        while ((cause instanceof UndeclaredThrowableException || cause instanceof InvocationTargetException)
+                && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof JsonRpcClientException) {
+            return cause.getClass().getSimpleName() + "(" + ((JsonRpcClientException) cause).getCode() + ")";
+        }
+        return cause.getClass().getSimpleName();
+    }
+
+    /**
+     * The outcome of a load run.
+     */
+    public static final class LoadReport {
+        private final long calls;
+        private final long elapsedNanos;
+        private final LatencyHistogram latency;
+        private final Map<String, Long> errors = new ConcurrentHashMap<>();
+
+        LoadReport(final long calls, final long elapsedNanos, final LatencyHistogram latency,
+                final Map<String, LongAdder> errors) {
+            this.calls = calls;
+            this.elapsedNanos = elapsedNanos;
+            this.latency = latency;
+            for (Map.Entry<String, LongAdder> error : errors.entrySet()) {
+                this.errors.put(error.getKey(), error.getValue().sum());
+            }
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        public long getErrors() {
+            long total = 0;
+            for (long count : errors.values()) {
+                total += count;
+            }
+            return total;
+        }
+
+        /**
+         * @return error counts keyed by exception type (and RPC error code)
+         */
+        public Map<String, Long> getErrorsByType() {
+            return errors;
+        }
+
+        public double getThroughput() {
+            return elapsedNanos <= 0 ? 0 : calls * 1e9 / elapsedNanos;
+        }
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d calls in %.1fs (%.1f/s), p50 %.2fms, p99 %.2fms, max %.2fms, errors %s",
+                    calls, elapsedNanos / 1e9, getThroughput(),
+                    latency.getPercentileMillis(50), latency.getPercentileMillis(99),
+                    latency.getMax(TimeUnit.MICROSECONDS) / 1000.0, errors);
+        }
+    }
+}
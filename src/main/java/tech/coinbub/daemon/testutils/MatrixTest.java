@@ -0,0 +1,19 @@
+package tech.coinbub.daemon.testutils;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import org.junit.jupiter.api.TestTemplate;
+
+/**
+ * Runs the annotated method once per entry of the `matrix` listed in
+ * `docker.properties`, with its parameters resolved against that entry's
+ * container. Each invocation is named after the entry and its image. Without
+ * a matrix, the method runs once against the configured image.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+@TestTemplate
+public @interface MatrixTest {
+}
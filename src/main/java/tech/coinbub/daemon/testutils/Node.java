@@ -0,0 +1,20 @@
+package tech.coinbub.daemon.testutils;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Selects which node of a multi-node topology an injected client, container,
+ * batch or load driver talks to. Parameters without it get the first node
+ * listed in `nodes`.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface Node {
+    /**
+     * @return the node name, as listed in `nodes`
+     */
+    String value();
+}
@@ -0,0 +1,362 @@
+package tech.coinbub.daemon.testutils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps persistent HTTP/1.1 connections to the daemon and hands out response
+ * bodies that read straight from the socket, so Jackson can bind large
+ * results without an intermediate copy.
+ *
+ * The request line and headers, including the authorization header, are
+ * encoded once up front. A connection goes back to the pool when its response
+ * body is closed. If the daemon dropped an idle connection, which shows as
+ * the request failing to write or as the connection closing before any of
+ * the response arrives, the request is retried once on a fresh connection.
+ * Nothing else is retried, so a call is never sent twice once the daemon may
+ * have acted on it.
+ */
+final class PooledTransport implements RpcTransport {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PooledTransport.class);
+    private static final byte[] CRLFCRLF = "\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final int BUFFER_SIZE = 65536;
+
+    private final InetSocketAddress address;
+    private final byte[] head;
+    private final int timeout;
+    private final BlockingQueue<Connection> idle;
+    private volatile boolean closed = false;
+
+    PooledTransport(final URL url, final DaemonConfig config) {
+        this.address = new InetSocketAddress(url.getHost(), url.getPort() == -1 ? 80 : url.getPort());
+        final String cred = Base64.getEncoder().encodeToString((config.getRpcUser() + ":" + config.getRpcPass())
+                .getBytes(StandardCharsets.UTF_8));
+        this.head = ("POST " + (url.getPath().isEmpty() ? "/" : url.getPath()) + " HTTP/1.1\r\n"
+                + "Host: " + url.getHost() + ":" + address.getPort() + "\r\n"
+                + "Authorization: Basic " + cred + "\r\n"
+                + "Content-Type: application/json\r\n"
+                + (config.isTransportCompression() ? "Accept-Encoding: gzip\r\n" : "")
+                + "Connection: keep-alive\r\n"
+                + "Content-Length: ").getBytes(StandardCharsets.US_ASCII);
+        this.timeout = config.getTransportTimeout();
+        this.idle = new ArrayBlockingQueue<>(config.getTransportConnections());
+    }
+
+    @Override
+    public InputStream send(final RequestBody body) throws IOException {
+        final Connection pooled = idle.poll();
+        if (pooled != null) {
+            try {
+                return pooled.exchange(body, true);
+            } catch (StaleConnectionException ex) {
+                LOGGER.debug("Pooled connection was closed by the daemon, reconnecting");
+            }
+        }
+        return new Connection().exchange(body, false);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Connection connection;
+        while ((connection = idle.poll()) != null) {
+            connection.close();
+        }
+    }
+
+    private void release(final Connection connection) {
+        if (closed || !idle.offer(connection)) {
+            connection.close();
+        }
+    }
+
+    private static String readLine(final InputStream in) throws IOException {
+        final StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b == -1) {
+                throw new EOFException("Connection closed mid-response");
+            }
+            if (b != '\r') {
+                line.append((char) b);
+            }
+        }
+        return line.toString();
+    }
+
+    private static final class StaleConnectionException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        StaleConnectionException(final Throwable cause) {
+            super(cause);
+        }
+    }
+
+    private final class Connection {
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+        private final ByteArrayOutputStream request = new ByteArrayOutputStream(4096);
+
+        Connection() throws IOException {
+            socket = new Socket();
+            try {
+                socket.setTcpNoDelay(true);
+                socket.setKeepAlive(true);
+                socket.setSoTimeout(timeout);
+                socket.connect(address, timeout);
+                in = new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE);
+                out = new BufferedOutputStream(socket.getOutputStream(), 8192);
+            } catch (IOException ex) {
+                close();
+                throw ex;
+            }
+        }
+
+        /**
+         * Writes the request and reads the response head.
+         *
+         * @param reused whether the connection came from the idle pool
+         * @throws StaleConnectionException if a reused connection turned out
+         * to be closed: writing failed, or it closed before the first byte of
+         * the response. Timeouts are never stale.
+         */
+        InputStream exchange(final RequestBody body, final boolean reused) throws IOException {
+            request.reset();
+            body.writeTo(request);
+
+            try {
+                out.write(head);
+                out.write(Integer.toString(request.size()).getBytes(StandardCharsets.US_ASCII));
+                out.write(CRLFCRLF);
+                request.writeTo(out);
+                out.flush();
+            } catch (IOException ex) {
+                close();
+                throw reused ? new StaleConnectionException(ex) : ex;
+            }
+
+            final int first;
+            try {
+                first = in.read();
+            } catch (SocketTimeoutException ex) {
+                close();
+                throw ex;
+            } catch (IOException ex) {
+                close();
+                throw reused ? new StaleConnectionException(ex) : ex;
+            }
+            if (first == -1) {
+                close();
+                final EOFException ex = new EOFException("Connection closed before response");
+                throw reused ? new StaleConnectionException(ex) : ex;
+            }
+
+            try {
+                return readResponse((char) first + readLine(in));
+            } catch (IOException | RuntimeException ex) {
+                close();
+                throw ex;
+            }
+        }
+
+        private InputStream readResponse(final String status) throws IOException {
+            final String[] parts = status.split(" ", 3);
+            if (parts.length < 2 || !parts[0].startsWith("HTTP/")) {
+                throw new IOException("Malformed status line: " + status);
+            }
+            final int code = Integer.parseInt(parts[1]);
+            long length = -1;
+            boolean chunked = false;
+            boolean gzip = false;
+            boolean keepAlive = !"HTTP/1.0".equals(parts[0]);
+            String line;
+            while (!(line = readLine(in)).isEmpty()) {
+                final int colon = line.indexOf(':');
+                if (colon < 0) {
+                    continue;
+                }
+                final String name = line.substring(0, colon).trim();
+                final String value = line.substring(colon + 1).trim();
+                if ("Content-Length".equalsIgnoreCase(name)) {
+                    length = Long.parseLong(value);
+                } else if ("Transfer-Encoding".equalsIgnoreCase(name)) {
+                    chunked = value.toLowerCase().contains("chunked");
+                } else if ("Content-Encoding".equalsIgnoreCase(name)) {
+                    gzip = "gzip".equalsIgnoreCase(value);
+                } else if ("Connection".equalsIgnoreCase(name)) {
+                    keepAlive = !"close".equalsIgnoreCase(value);
+                }
+            }
+
+            final InputStream raw;
+            if (chunked) {
+                raw = new ChunkedStream(in);
+            } else if (length >= 0) {
+                raw = new BoundedStream(in, length);
+            } else {
+                raw = in;
+                keepAlive = false;
+            }
+            if (code >= 400 && length == 0) {
+                close();
+                throw new IOException("HTTP " + code + " from " + address);
+            }
+            final ResponseStream response = new ResponseStream(this, raw, keepAlive);
+            return gzip ? new GZIPInputStream(response, BUFFER_SIZE) : response;
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException ex) {
+                LOGGER.debug("Failed to close connection", ex);
+            }
+        }
+    }
+
+    /**
+     * The body of one response. Closing it drains whatever was not read and
+     * returns the connection to the pool.
+     */
+    private final class ResponseStream extends InputStream {
+        private final Connection connection;
+        private final InputStream body;
+        private final boolean keepAlive;
+        private boolean done = false;
+
+        ResponseStream(final Connection connection, final InputStream body, final boolean keepAlive) {
+            this.connection = connection;
+            this.body = body;
+            this.keepAlive = keepAlive;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return body.read();
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            return body.read(b, off, len);
+        }
+
+        @Override
+        public void close() {
+            if (done) {
+                return;
+            }
+            done = true;
+            if (!keepAlive) {
+                connection.close();
+                return;
+            }
+            try {
+                final byte[] skip = new byte[4096];
+                while (body.read(skip) != -1) {
+                    // Drain so the next response starts at a clean boundary
+                }
+                release(connection);
+            } catch (IOException ex) {
+                connection.close();
+            }
+        }
+    }
+
+    private static final class BoundedStream extends InputStream {
+        private final InputStream in;
+        private long remaining;
+
+        BoundedStream(final InputStream in, final long length) {
+            this.in = in;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            final int b = in.read();
+            if (b == -1) {
+                throw new EOFException("Response truncated");
+            }
+            remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            final int read = in.read(b, off, (int) Math.min(len, remaining));
+            if (read == -1) {
+                throw new EOFException("Response truncated");
+            }
+            remaining -= read;
+            return read;
+        }
+    }
+
+    private static final class ChunkedStream extends InputStream {
+        private final InputStream in;
+        private long remaining = 0;
+        private boolean eof = false;
+
+        ChunkedStream(final InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (eof) {
+                return -1;
+            }
+            if (remaining == 0) {
+                final String size = readLine(in);
+                final int extension = size.indexOf(';');
+                remaining = Long.parseLong((extension < 0 ? size : size.substring(0, extension)).trim(), 16);
+                if (remaining == 0) {
+                    // Skip any trailers
+                    while (!readLine(in).isEmpty()) {
+                        // Nothing to keep
+                    }
+                    eof = true;
+                    return -1;
+                }
+            }
+            final int read = in.read(b, off, (int) Math.min(len, remaining));
+            if (read == -1) {
+                throw new EOFException("Response truncated");
+            }
+            remaining -= read;
+            if (remaining == 0) {
+                readLine(in);
+            }
+            return read;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package tech.coinbub.daemon.testutils;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Reads a single named property from a bean through a cached
+ * {@link MethodHandle}. Accessors are resolved once per (class, property)
+ * pair and shared by every matcher.
+ */
+final class PropertyAccessor {
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final ClassValue<ConcurrentMap<String, PropertyAccessor>> FIELD_FIRST = new AccessorCache();
+    private static final ClassValue<ConcurrentMap<String, PropertyAccessor>> GETTER_FIRST = new AccessorCache();
+
+    private final MethodHandle handle;
+    private final String problem;
+
+    private PropertyAccessor(final MethodHandle handle, final String problem) {
+        this.handle = handle;
+        this.problem = problem;
+    }
+
+    /**
+     * Looks up the accessor for a property, preferring the instance field of
+     * that name (declared on the class or any superclass) over a bean getter.
+     * Static fields are not properties and are never read.
+     *
+     * @param type the runtime class of the bean
+     * @param name the property name
+     * @return the accessor, whose {@link #exists()} is false if neither a
+     * field nor a getter could be used
+     */
+    static PropertyAccessor forField(final Class<?> type, final String name) {
+        return lookup(FIELD_FIRST.get(type), type, name, true);
+    }
+
+    /**
+     * Looks up the accessor for a property, preferring a bean getter over the
+     * field of that name.
+     *
+     * @param type the runtime class of the bean
+     * @param name the property name
+     * @return the accessor
+     */
+    static PropertyAccessor forGetter(final Class<?> type, final String name) {
+        return lookup(GETTER_FIRST.get(type), type, name, false);
+    }
+
+    private static PropertyAccessor lookup(final ConcurrentMap<String, PropertyAccessor> cache,
+            final Class<?> type, final String name, final boolean fieldFirst) {
+        // Plain get first: it doesn't lock or capture, which keeps the hot path cheap
+        final PropertyAccessor cached = cache.get(name);
+        if (cached != null) {
+            return cached;
+        }
+        return cache.computeIfAbsent(name, (n) -> resolve(type, n, fieldFirst));
+    }
+
+    boolean exists() {
+        return handle != null;
+    }
+
+    Object get(final Object bean) throws Throwable {
+        return (Object) handle.invokeExact(bean);
+    }
+
+    /**
+     * Explains why the property could not be resolved.
+     */
+    String getProblem() {
+        return problem;
+    }
+
+    private static PropertyAccessor resolve(final Class<?> type, final String name, final boolean fieldFirst) {
+        try {
+            MethodHandle handle = fieldFirst ? fieldHandle(type, name) : getterHandle(type, name);
+            if (handle == null) {
+                handle = fieldFirst ? getterHandle(type, name) : fieldHandle(type, name);
+            }
+            if (handle == null) {
+                return new PropertyAccessor(null,
+                        "no field or getter \"" + name + "\" on " + type.getName());
+            }
+            return new PropertyAccessor(handle.asType(GETTER_TYPE), null);
+        } catch (IllegalStateException ex) {
+            return new PropertyAccessor(null, ex.getMessage() + ": " + ex.getCause());
+        } catch (RuntimeException ex) {
+            // e.g. WrongMethodTypeException from asType; matching must never throw
+            return new PropertyAccessor(null, "cannot read \"" + name + "\" on " + type.getName() + ": " + ex);
+        }
+    }
+
+    private static MethodHandle fieldHandle(final Class<?> type, final String name) {
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            try {
+                final Field field = c.getDeclaredField(name);
+                if (Modifier.isStatic(field.getModifiers())) {
+                    // A static getter handle takes no bean and can't be adapted to GETTER_TYPE
+                    continue;
+                }
+                field.setAccessible(true);
+                return MethodHandles.lookup().unreflectGetter(field);
+            } catch (NoSuchFieldException ex) {
+                // Try the superclass
+            } catch (IllegalAccessException | RuntimeException ex) {
+                throw new IllegalStateException("Cannot access field " + name + " on " + c.getName(), ex);
+            }
+        }
+        return null;
+    }
+
+    private static MethodHandle getterHandle(final Class<?> type, final String name) {
+        try {
+            for (PropertyDescriptor property : Introspector.getBeanInfo(type).getPropertyDescriptors()) {
+                if (name.equals(property.getName()) && property.getReadMethod() != null) {
+                    final Method method = property.getReadMethod();
+                    method.setAccessible(true);
+                    return MethodHandles.lookup().unreflect(method);
+                }
+            }
+            return null;
+        } catch (IntrospectionException | IllegalAccessException | RuntimeException ex) {
+            throw new IllegalStateException("Cannot access getter for " + name + " on " + type.getName(), ex);
+        }
+    }
+
+    private static final class AccessorCache extends ClassValue<ConcurrentMap<String, PropertyAccessor>> {
+        @Override
+        protected ConcurrentMap<String, PropertyAccessor> computeValue(final Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package tech.coinbub.daemon.testutils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.googlecode.jsonrpc4j.IJsonRpcClient;
+import com.googlecode.jsonrpc4j.JsonRpcClientException;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Polls a daemon over JSON-RPC until it answers a probe call, backing off
+ * between attempts.
+ *
+ * Configured through `docker.properties`:
+ *
+ * - `ready.method` - RPC method to call. When absent, an unknown method is
+ *   called and a "method not found" or "invalid params" error counts as
+ *   ready.
+ * - `ready.params` - JSON array of arguments, defaults to `[]`
+ * - `ready.result` - JSON value the result must equal, if set
+ * - `ready.timeout` - overall deadline in milliseconds, defaults to 60000
+ * - `ready.warmupCodes` - comma-separated error codes the daemon answers
+ *   with while it is still starting, defaults to `-28` ("Loading block
+ *   index" and the like)
+ */
+public final class ReadinessProbe {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReadinessProbe.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final long INITIAL_DELAY = 25;
+    private static final long MAX_DELAY = 1000;
+    private static final int WARMUP = -28;
+    private static final int METHOD_NOT_FOUND = -32601;
+    private static final int INVALID_PARAMS = -32602;
+
+    private final IJsonRpcClient client;
+    private final String method;
+    private final Object[] params;
+    private final JsonNode expected;
+    private final long timeout;
+    private final Set<Integer> warmupCodes;
+
+    public ReadinessProbe(final IJsonRpcClient client,
+            final String method,
+            final JsonNode params,
+            final JsonNode expected,
+            final long timeout) {
+        this(client, method, params, expected, timeout, Collections.singleton(WARMUP));
+    }
+
+    public ReadinessProbe(final IJsonRpcClient client,
+            final String method,
+            final JsonNode params,
+            final JsonNode expected,
+            final long timeout,
+            final Set<Integer> warmupCodes) {
+        this.client = client;
+        this.method = method;
+        this.params = params == null ? new Object[0] : MAPPER.convertValue(params, Object[].class);
+        this.expected = expected;
+        this.timeout = timeout;
+        this.warmupCodes = warmupCodes;
+    }
+
+    public static ReadinessProbe fromProperties(final Properties props, final IJsonRpcClient client)
+            throws IOException {
+        final String params = props.getProperty("ready.params");
+        final String expected = props.getProperty("ready.result");
+        final Set<Integer> warmupCodes = new HashSet<>();
+        for (String code : props.getProperty("ready.warmupCodes", String.valueOf(WARMUP)).split(",")) {
+            if (!code.trim().isEmpty()) {
+                warmupCodes.add(Integer.valueOf(code.trim()));
+            }
+        }
+        return new ReadinessProbe(client,
+                props.getProperty("ready.method"),
+                params == null ? null : MAPPER.readTree(params),
+                expected == null ? null : MAPPER.readTree(expected),
+                Long.parseLong(props.getProperty("ready.timeout", "60000")),
+                warmupCodes);
+    }
+
+    /**
+     * Blocks until the daemon is ready.
+     *
+     * @return the number of milliseconds spent waiting
+     * @throws InterruptedException
+     */
+    public long await() throws InterruptedException {
+        final long start = System.nanoTime();
+        final long deadline = start + timeout * 1_000_000L;
+        long delay = INITIAL_DELAY;
+        int attempts = 0;
+        Exception last = null;
+        while (true) {
+            attempts++;
+            try {
+                if (probe()) {
+                    final long waited = (System.nanoTime() - start) / 1_000_000L;
+                    LOGGER.info("Daemon ready after {}ms ({} attempts)", waited, attempts);
+                    return waited;
+                }
+                last = null;
+            } catch (Exception ex) {
+                // Transport and RPC failures mean not ready yet; Errors are real failures
+                last = ex;
+            }
+
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new RuntimeException("Daemon not ready after " + timeout + "ms ("
+                        + attempts + " attempts)", last);
+            }
+            Thread.sleep(Math.min(delay, remaining / 1_000_000L + 1));
+            delay = Math.min(delay * 2, MAX_DELAY);
+        }
+    }
+
+    private boolean probe() throws Exception {
+        if (method == null) {
+            try {
+                invoke("dockerized-ping");
+            } catch (JsonRpcClientException ex) {
+                if (warmupCodes.contains(ex.getCode())
+                        || ex.getCode() != METHOD_NOT_FOUND && ex.getCode() != INVALID_PARAMS) {
+                    LOGGER.debug("Probe answered with error {}, waiting", ex.getCode());
+                    throw ex;
+                }
+                // The daemon dispatched the call, even if it didn't like it
+            }
+            return true;
+        }
+
+        final JsonNode result = invoke(method);
+        if (expected != null && !expected.equals(result)) {
+            LOGGER.debug("Probe {} returned {}, waiting for {}", method, result, expected);
+            return false;
+        }
+        return true;
+    }
+
+    private JsonNode invoke(final String name) throws Exception {
+        try {
+            return client.invoke(name, params, JsonNode.class);
+        } catch (Exception | Error ex) {
+            throw ex;
+        } catch (Throwable ex) {
+            throw new IOException(ex);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package tech.coinbub.daemon.testutils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.googlecode.jsonrpc4j.IJsonRpcClient;
+import com.googlecode.jsonrpc4j.JsonRpcClientException;
+import java.lang.reflect.Type;
+import java.util.Map;
+
+/**
+ * Passes calls through to the daemon and adds every exchange to a
+ * {@link RpcTape.Recording}.
+ */
+final class RecordingRpcClient extends AbstractRpcClient {
+    private final IJsonRpcClient delegate;
+    private final RpcTape.Recording recording;
+
+    RecordingRpcClient(final IJsonRpcClient delegate, final RpcTape.Recording recording) {
+        this.delegate = delegate;
+        this.recording = recording;
+    }
+
+    @Override
+    public Object invoke(final String methodName, final Object argument, final Type returnType,
+            final Map<String, String> extraHeaders) throws Throwable {
+        final String key = RpcTape.key(methodName, argument);
+        final ObjectNode response = RpcTape.MAPPER.createObjectNode();
+        final JsonNode result;
+        try {
+            result = delegate.invoke(methodName, argument, JsonNode.class, extraHeaders);
+        } catch (JsonRpcClientException ex) {
+            final ObjectNode error = response.putObject("error");
+            error.put("code", ex.getCode());
+            error.put("message", ex.getMessage());
+            error.set("data", ex.getData());
+            recording.add(key, response);
+            throw ex;
+        }
+        response.set("result", result == null ? NullNode.getInstance() : result);
+        recording.add(key, response);
+        return RpcTape.convert(result, returnType);
+    }
+}
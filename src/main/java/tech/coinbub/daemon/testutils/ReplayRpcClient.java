@@ -0,0 +1,42 @@
+package tech.coinbub.daemon.testutils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.googlecode.jsonrpc4j.JsonRpcClientException;
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Answers calls from a recorded {@link RpcTape} without touching the
+ * network.
+ */
+final class ReplayRpcClient extends AbstractRpcClient {
+    private final RpcTape tape;
+    private final ConcurrentMap<String, AtomicInteger> occurrences = new ConcurrentHashMap<>();
+
+    ReplayRpcClient(final RpcTape tape) {
+        this.tape = tape;
+    }
+
+    @Override
+    public Object invoke(final String methodName, final Object argument, final Type returnType,
+            final Map<String, String> extraHeaders) throws Throwable {
+        final String key = RpcTape.key(methodName, argument);
+        final int occurrence = occurrences.computeIfAbsent(key, (k) -> new AtomicInteger())
+                .getAndIncrement();
+        final JsonNode response = tape.lookup(key, occurrence);
+        if (response == null) {
+            throw new IllegalStateException("No recorded response for " + methodName + " "
+                    + RpcTape.MAPPER.writeValueAsString(argument) + "; re-record the tape");
+        }
+        final JsonNode error = response.get("error");
+        if (error != null && !error.isNull()) {
+            throw new JsonRpcClientException(error.path("code").asInt(),
+                    error.path("message").asText(),
+                    error.get("data"));
+        }
+        return RpcTape.convert(response.get("result"), returnType);
+    }
+}
@@ -0,0 +1,347 @@
+package tech.coinbub.daemon.testutils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.model.Statistics;
+import com.github.dockerjava.core.async.ResultCallbackTemplate;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Follows the Docker stats stream of every managed container and attributes
+ * the resources used to the test classes running at the time.
+ *
+ * Docker pushes a sample about once a second per container. Each sample only
+ * updates a few preallocated counters, so the tests themselves pay nothing.
+ * A test class is charged for the containers it leased, from the first time
+ * it leased each one: CPU time, block I/O and network traffic are reported as
+ * the growth over the class, memory as the peak of their combined usage.
+ *
+ * Enabled unless `-DdockerizedStats=false`, and written as JSON at shutdown to
+ * `dockerizedStatsFile`, which defaults to `target/dockerized-resources.json`.
+ */
+final class ResourceSampler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResourceSampler.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final long RESUBSCRIBE_DELAY = 1000;
+
+    private static final int CPU = 0;
+    private static final int BLOCK_READ = 1;
+    private static final int BLOCK_WRITE = 2;
+    private static final int NET_RX = 3;
+    private static final int NET_TX = 4;
+    private static final int COUNTERS = 5;
+
+    private final DockerClient docker;
+    private final ConcurrentMap<String, Window> open = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Object>> report = new TreeMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor((r) -> {
+        final Thread thread = new Thread(r, "dockerized-stats");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<String, Follower> followers = new LinkedHashMap<>();
+    private volatile boolean closed = false;
+
+    ResourceSampler(final DockerClient docker, final List<String> containers) {
+        this.docker = docker;
+        for (String name : containers) {
+            followers.put(name, new Follower(name));
+        }
+    }
+
+    /**
+     * Subscribes to the stats of each container. Containers are followed by
+     * name, so restoring a snapshot does not lose them.
+     */
+    static ResourceSampler start(final DockerClient docker, final List<DaemonContainer> containers) {
+        final List<String> names = new ArrayList<>(containers.size());
+        for (DaemonContainer container : containers) {
+            names.add(container.getName());
+        }
+        final ResourceSampler sampler = new ResourceSampler(docker, names);
+        for (Follower follower : sampler.followers.values()) {
+            follower.subscribe();
+        }
+        return sampler;
+    }
+
+    /**
+     * Starts attributing samples to a test class.
+     */
+    void begin(final String testClass) {
+        open.put(testClass, new Window());
+    }
+
+    /**
+     * Charges a test class for containers it leased. Containers that are
+     * already charged to it, or that aren't followed, are ignored.
+     */
+    void attach(final String testClass, final List<DaemonContainer> containers) {
+        final Window window = open.get(testClass);
+        if (window == null) {
+            return;
+        }
+        for (DaemonContainer container : containers) {
+            final Follower follower = followers.get(container.getName());
+            if (follower != null) {
+                window.attach(follower);
+            }
+        }
+    }
+
+    /**
+     * Stops attributing samples to a test class and adds it to the report.
+     */
+    void end(final String testClass) {
+        final Window window = open.remove(testClass);
+        if (window == null) {
+            return;
+        }
+        final Map<String, Object> summary = window.summarize();
+        synchronized (report) {
+            report.put(testClass, summary);
+        }
+    }
+
+    /**
+     * Folds in a sample of the named container, as its stats stream does.
+     */
+    void accept(final String container, final Statistics stats) {
+        final Follower follower = followers.get(container);
+        if (follower != null) {
+            follower.accept(stats);
+        }
+    }
+
+    void write(final Path path) throws IOException {
+        closed = true;
+        scheduler.shutdownNow();
+        for (Follower follower : followers.values()) {
+            follower.close();
+        }
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        synchronized (report) {
+            MAPPER.copy()
+                    .enable(SerializationFeature.INDENT_OUTPUT)
+                    .writeValue(path.toFile(), report);
+        }
+    }
+
+    /**
+     * The counters of each container charged to a test class, as they were
+     * when it was attached, plus the peak of their combined memory usage.
+     */
+    private final class Window {
+        private final long start = System.nanoTime();
+        private final ConcurrentMap<Follower, long[]> initial = new ConcurrentHashMap<>();
+        private final AtomicLong peakMemory = new AtomicLong();
+
+        void attach(final Follower follower) {
+            initial.computeIfAbsent(follower, Follower::snapshot);
+            observeMemory();
+        }
+
+        boolean follows(final Follower follower) {
+            return initial.containsKey(follower);
+        }
+
+        void observeMemory() {
+            long current = 0;
+            for (Follower follower : initial.keySet()) {
+                current += follower.memory;
+            }
+            long peak;
+            while (current > (peak = peakMemory.get()) && !peakMemory.compareAndSet(peak, current)) {
+                // Retry until we win or someone observes a larger value
+            }
+        }
+
+        Map<String, Object> summarize() {
+            final double seconds = (System.nanoTime() - start) / 1e9;
+            final long[] growth = new long[COUNTERS + 1];
+            final List<String> containers = new ArrayList<>();
+            for (Map.Entry<Follower, long[]> entry : initial.entrySet()) {
+                final long[] now = entry.getKey().snapshot();
+                for (int i = 0; i <= COUNTERS; i++) {
+                    growth[i] += now[i] - entry.getValue()[i];
+                }
+                containers.add(entry.getKey().name);
+            }
+            Collections.sort(containers);
+            final double cpuSeconds = growth[CPU] / 1e9;
+            final Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("containers", containers);
+            summary.put("durationMs", Math.round(seconds * 1000));
+            summary.put("samples", growth[COUNTERS]);
+            summary.put("cpuSeconds", cpuSeconds);
+            summary.put("cpuCores", seconds > 0 ? cpuSeconds / seconds : 0);
+            summary.put("memoryPeakBytes", peakMemory.get());
+            summary.put("blockReadBytes", growth[BLOCK_READ]);
+            summary.put("blockWriteBytes", growth[BLOCK_WRITE]);
+            summary.put("networkRxBytes", growth[NET_RX]);
+            summary.put("networkTxBytes", growth[NET_TX]);
+            return summary;
+        }
+    }
+
+    /**
+     * Follows one container, folding its cumulative counters into totals of
+     * its own. A counter that goes backwards means the container was
+     * recreated, so its new value is all growth.
+     */
+    private final class Follower {
+        private final String name;
+        private final long[] last = new long[COUNTERS];
+        private final long[] current = new long[COUNTERS];
+        private final long[] totals = new long[COUNTERS];
+        private long samples = 0;
+        private volatile long memory = 0;
+        private volatile StatsCallback callback;
+
+        Follower(final String name) {
+            this.name = name;
+        }
+
+        void subscribe() {
+            if (closed) {
+                return;
+            }
+            try {
+                callback = docker.statsCmd(name).exec(new StatsCallback(this));
+            } catch (RuntimeException ex) {
+                LOGGER.debug("Could not follow stats of {}: {}", name, ex.getMessage());
+                resubscribe();
+            }
+        }
+
+        void resubscribe() {
+            if (closed) {
+                return;
+            }
+            try {
+                scheduler.schedule(this::subscribe, RESUBSCRIBE_DELAY, TimeUnit.MILLISECONDS);
+            } catch (RuntimeException ex) {
+                LOGGER.debug("Not resubscribing to stats of {}: {}", name, ex.getMessage());
+            }
+        }
+
+        /**
+         * @return the totals, followed by the number of samples
+         */
+        synchronized long[] snapshot() {
+            final long[] result = Arrays.copyOf(totals, COUNTERS + 1);
+            result[COUNTERS] = samples;
+            return result;
+        }
+
+        void accept(final Statistics stats) {
+            synchronized (this) {
+                current[CPU] = number(map(map(stats.getCpuStats()).get("cpu_usage")), "total_usage");
+                current[BLOCK_READ] = 0;
+                current[BLOCK_WRITE] = 0;
+                final Object io = map(stats.getBlkioStats()).get("io_service_bytes_recursive");
+                if (io instanceof List) {
+                    for (Object item : (List<?>) io) {
+                        final Map<?, ?> entry = map(item);
+                        final Object op = entry.get("op");
+                        if ("Read".equalsIgnoreCase(String.valueOf(op))) {
+                            current[BLOCK_READ] += number(entry, "value");
+                        } else if ("Write".equalsIgnoreCase(String.valueOf(op))) {
+                            current[BLOCK_WRITE] += number(entry, "value");
+                        }
+                    }
+                }
+                current[NET_RX] = 0;
+                current[NET_TX] = 0;
+                for (Object network : map(stats.getNetworks()).values()) {
+                    current[NET_RX] += number(map(network), "rx_bytes");
+                    current[NET_TX] += number(map(network), "tx_bytes");
+                }
+                for (int i = 0; i < COUNTERS; i++) {
+                    totals[i] += current[i] >= last[i] ? current[i] - last[i] : current[i];
+                    last[i] = current[i];
+                }
+                samples++;
+                memory = number(map(stats.getMemoryStats()), "usage");
+            }
+            for (Window window : open.values()) {
+                if (window.follows(this)) {
+                    window.observeMemory();
+                }
+            }
+        }
+
+        void close() {
+            final StatsCallback current = callback;
+            if (current == null) {
+                return;
+            }
+            try {
+                current.close();
+            } catch (IOException ex) {
+                LOGGER.debug("Failed to close stats stream of {}", name, ex);
+            }
+        }
+    }
+
+    private static Map<?, ?> map(final Object value) {
+        return value instanceof Map ? (Map<?, ?>) value : Collections.emptyMap();
+    }
+
+    private static long number(final Map<?, ?> map, final String key) {
+        final Object value = map.get(key);
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+
+    private static final class StatsCallback extends ResultCallbackTemplate<StatsCallback, Statistics> {
+        private final Follower follower;
+        private final AtomicBoolean ended = new AtomicBoolean();
+
+        StatsCallback(final Follower follower) {
+            this.follower = follower;
+        }
+
+        @Override
+        public void onNext(final Statistics stats) {
+            follower.accept(stats);
+        }
+
+        @Override
+        public void onError(final Throwable throwable) {
+            LOGGER.debug("Stats stream of {} failed: {}", follower.name, throwable.getMessage());
+            super.onError(throwable);
+            if (ended.compareAndSet(false, true)) {
+                follower.resubscribe();
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            super.onComplete();
+            if (ended.compareAndSet(false, true)) {
+                follower.resubscribe();
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package tech.coinbub.daemon.testutils;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Restores the leased container from a snapshot taken with
+ * {@link DaemonContainer#snapshot(String)} before the annotated test class
+ * or method runs. Does nothing if the leased container's pool has not taken
+ * the snapshot yet, so the first class to prepare the chain can take it
+ * itself. Each matrix entry and node keeps its own snapshots.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface RestoreSnapshot {
+    /**
+     * @return the snapshot name
+     */
+    String value();
+}
@@ -0,0 +1,214 @@
+package tech.coinbub.daemon.testutils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.googlecode.jsonrpc4j.IJsonRpcClient;
+import com.googlecode.jsonrpc4j.JsonRpcClientException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import tech.coinbub.daemon.proxy.ProxyUtil;
+
+/**
+ * Collects calls made on a client interface and sends them to the daemon as
+ * a single JSON-RPC batch request.
+ *
+ * <pre>
+ * final RpcBatch&lt;Bitcoind&gt; batch = container.batch(Bitcoind.class);
+ * final CompletableFuture&lt;String&gt; hash = batch.call((c) -&gt; c.getblockhash(1));
+ * batch.execute();
+ * </pre>
+ *
+ * Against a live daemon the batch is timed as a single `batch` call in
+ * {@link DockerizedMetrics}. While recording or replaying an {@link RpcTape},
+ * the calls go one by one through the same client chain as the resolved
+ * proxies instead, so they are timed and taped per method and replay without
+ * a daemon.
+ *
+ * Not thread-safe; use one batch per thread.
+ *
+ * @param <T> the client interface
+ */
+public final class RpcBatch<T> {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final RpcTransport transport;
+    private final IJsonRpcClient invoker;
+    private final CapturingRpcClient capture = new CapturingRpcClient();
+    private final T recorder;
+    private final List<Pending<?>> pending = new ArrayList<>();
+
+    /**
+     * Sends the calls as one batch request over `transport`.
+     */
+    RpcBatch(final Class<T> type, final RpcTransport transport) {
+        this(type, transport, null);
+    }
+
+    /**
+     * Sends the calls one at a time through `invoker`.
+     */
+    RpcBatch(final Class<T> type, final IJsonRpcClient invoker) {
+        this(type, null, invoker);
+    }
+
+    private RpcBatch(final Class<T> type, final RpcTransport transport, final IJsonRpcClient invoker) {
+        this.transport = transport;
+        this.invoker = invoker;
+        this.recorder = ProxyUtil.createClientProxy(type.getClassLoader(), type, capture);
+    }
+
+    /**
+     * Queues the single RPC call made by `call` on the client.
+     *
+     * @param <R> the result type
+     * @param call invokes exactly one method on the client it is given
+     * @return a future completed by {@link #execute()}
+     * @throws IllegalStateException if `call` makes no RPC call or more than
+     * one
+     */
+    public <R> CompletableFuture<R> call(final Function<T, R> call) {
+        final Pending<R> entry;
+        try {
+            call.apply(recorder);
+            entry = new Pending<>(capture.take());
+        } finally {
+            // A failed lambda must not leave its call behind for the next one
+            capture.reset();
+        }
+        pending.add(entry);
+        return entry.future;
+    }
+
+    public int size() {
+        return pending.size();
+    }
+
+    /**
+     * Sends every queued call in one request and completes their futures.
+     * Calls that the daemon answers with an error complete exceptionally with
+     * a {@link JsonRpcClientException}. The batch is empty afterwards and may
+     * be reused.
+     *
+     * @throws IOException if the request itself fails, in which case every
+     * future also completes exceptionally
+     */
+    public void execute() throws IOException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        final List<Pending<?>> sent = new ArrayList<>(pending);
+        pending.clear();
+        if (transport == null) {
+            for (Pending<?> entry : sent) {
+                entry.invoke(invoker);
+            }
+            return;
+        }
+
+        final ArrayNode request = MAPPER.createArrayNode();
+        for (int i = 0; i < sent.size(); i++) {
+            final CapturingRpcClient.Call call = sent.get(i).call;
+            final ObjectNode node = request.addObject();
+            node.put("jsonrpc", "2.0");
+            node.put("id", i);
+            node.put("method", call.getMethod());
+            node.set("params", call.getArgument() == null
+                    ? MAPPER.createArrayNode()
+                    : MAPPER.valueToTree(call.getArgument()));
+        }
+
+        final JsonNode response;
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            response = send(request);
+            failed = false;
+        } catch (IOException | RuntimeException ex) {
+            for (Pending<?> entry : sent) {
+                entry.future.completeExceptionally(ex);
+            }
+            throw ex;
+        } finally {
+            DockerizedMetrics.recordCall("batch", System.nanoTime() - start, failed);
+        }
+
+        if (!response.isArray()) {
+            final IOException ex = new IOException("Expected a batch response but got " + response);
+            for (Pending<?> entry : sent) {
+                entry.future.completeExceptionally(ex);
+            }
+            throw ex;
+        }
+        for (JsonNode item : response) {
+            final JsonNode id = item.get("id");
+            if (id == null || !id.canConvertToInt() || id.asInt() < 0 || id.asInt() >= sent.size()) {
+                continue;
+            }
+            sent.get(id.asInt()).complete(item);
+        }
+        for (Pending<?> entry : sent) {
+            if (!entry.future.isDone()) {
+                entry.future.completeExceptionally(
+                        new IOException("No response for " + entry.call.getMethod()));
+            }
+        }
+    }
+
+    private JsonNode send(final JsonNode request) throws IOException {
+        try (InputStream in = transport.send((out) -> MAPPER.writeValue(out, request))) {
+            return MAPPER.readTree(in);
+        }
+    }
+
+    private static final class Pending<R> {
+        private final CapturingRpcClient.Call call;
+        private final CompletableFuture<R> future = new CompletableFuture<>();
+
+        Pending(final CapturingRpcClient.Call call) {
+            this.call = call;
+        }
+
+        @SuppressWarnings("unchecked")
+        void invoke(final IJsonRpcClient invoker) {
+            try {
+                future.complete((R) invoker.invoke(call.getMethod(), call.getArgument(), call.getReturnType(),
+                        Collections.<String, String>emptyMap()));
+            } catch (Error ex) {
+                future.completeExceptionally(ex);
+                throw ex;
+            } catch (Throwable ex) {
+                future.completeExceptionally(ex);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        void complete(final JsonNode item) {
+            final JsonNode error = item.get("error");
+            if (error != null && !error.isNull()) {
+                future.completeExceptionally(new JsonRpcClientException(
+                        error.path("code").asInt(),
+                        error.path("message").asText(),
+                        error.get("data")));
+                return;
+            }
+            try {
+                final JsonNode result = item.get("result");
+                if (call.getReturnType() == null || result == null || result.isNull()) {
+                    future.complete(null);
+                    return;
+                }
+                future.complete((R) MAPPER.readValue(MAPPER.treeAsTokens(result),
+                        MAPPER.getTypeFactory().constructType(call.getReturnType())));
+            } catch (IOException | RuntimeException ex) {
+                future.completeExceptionally(ex);
+            }
+        }
+    }
+}
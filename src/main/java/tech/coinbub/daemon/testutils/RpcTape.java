@@ -0,0 +1,239 @@
+package tech.coinbub.daemon.testutils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A recorded set of JSON-RPC exchanges, stored as a memory-mapped file with a
+ * sorted hash index.
+ *
+ * Each distinct request (method plus serialized parameters) is stored once,
+ * along with every response it received in order, so stateful calls such as
+ * `getblockcount` replay the same sequence they were recorded with.
+ *
+ * Layout, big-endian:
+ *
+ * <pre>
+ * magic "DRPCTAPE", int version, int count
+ * count x (long hash, long offset), sorted by hash
+ * at each offset: int keyLength, key, int responses, responses x (int length, JSON)
+ * </pre>
+ */
+public final class RpcTape implements Closeable {
+    private static final byte[] MAGIC = "DRPCTAPE".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int HEADER = MAGIC.length + 8;
+    private static final int INDEX_ENTRY = 16;
+    static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int count;
+
+    private RpcTape(final FileChannel channel, final MappedByteBuffer buffer, final int count) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.count = count;
+    }
+
+    /**
+     * Maps a tape file for reading.
+     *
+     * @param path the tape file
+     * @return the opened tape
+     * @throws IOException
+     */
+    public static RpcTape open(final Path path) throws IOException {
+        final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            final byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || buffer.getInt() != VERSION) {
+                throw new IOException(path + " is not a version " + VERSION + " RPC tape");
+            }
+            return new RpcTape(channel, buffer, buffer.getInt());
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Builds the lookup key for a request.
+     *
+     * @param method the RPC method
+     * @param argument the parameters as passed to the client
+     * @return the key
+     * @throws IOException
+     */
+    static String key(final String method, final Object argument) throws IOException {
+        return method + '\n' + MAPPER.writeValueAsString(argument);
+    }
+
+    /**
+     * Finds the response a request received on its `occurrence`-th call. Once
+     * the recorded responses run out, the last one is repeated.
+     *
+     * @param key the request key
+     * @param occurrence zero-based count of previous identical requests
+     * @return the response object, holding either `result` or `error`, or null
+     * if the request was never recorded
+     * @throws IOException
+     */
+    public JsonNode lookup(final String key, final int occurrence) throws IOException {
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        final long hash = hash(keyBytes);
+
+        // Binary search for the first index entry with this hash
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (buffer.getLong(HEADER + mid * INDEX_ENTRY) < hash) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        final ByteBuffer view = buffer.duplicate();
+        for (int i = low; i < count && buffer.getLong(HEADER + i * INDEX_ENTRY) == hash; i++) {
+            view.position((int) buffer.getLong(HEADER + i * INDEX_ENTRY + 8));
+            final byte[] candidate = new byte[view.getInt()];
+            view.get(candidate);
+            if (!Arrays.equals(candidate, keyBytes)) {
+                continue;
+            }
+            final int responses = view.getInt();
+            final int wanted = Math.min(occurrence, responses - 1);
+            for (int r = 0; r < wanted; r++) {
+                final int length = view.getInt();
+                view.position(view.position() + length);
+            }
+            final byte[] response = new byte[view.getInt()];
+            view.get(response);
+            return MAPPER.readTree(response);
+        }
+        return null;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Binds a recorded result to the type the client proxy expects.
+     */
+    static Object convert(final JsonNode result, final Type returnType) throws IOException {
+        if (returnType == null || result == null || result.isNull()) {
+            return null;
+        }
+        return MAPPER.readValue(MAPPER.treeAsTokens(result),
+                MAPPER.getTypeFactory().constructType(returnType));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * 64-bit FNV-1a.
+     */
+    private static long hash(final byte[] bytes) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Collects exchanges in memory while recording, then writes them out as a
+     * tape. Safe for use from multiple threads.
+     */
+    public static final class Recording {
+        private final Map<String, List<byte[]>> exchanges = new LinkedHashMap<>();
+
+        synchronized void add(final String key, final JsonNode response) throws IOException {
+            exchanges.computeIfAbsent(key, (k) -> new ArrayList<>())
+                    .add(MAPPER.writeValueAsBytes(response));
+        }
+
+        public synchronized int size() {
+            return exchanges.size();
+        }
+
+        /**
+         * Writes every recorded exchange to a tape file, replacing it.
+         *
+         * @param path the tape file
+         * @throws IOException
+         */
+        public synchronized void write(final Path path) throws IOException {
+            final int count = exchanges.size();
+            final byte[][] keys = new byte[count][];
+            final long[][] index = new long[count][];
+            long offset = HEADER + (long) count * INDEX_ENTRY;
+            int i = 0;
+            for (Map.Entry<String, List<byte[]>> exchange : exchanges.entrySet()) {
+                keys[i] = exchange.getKey().getBytes(StandardCharsets.UTF_8);
+                index[i] = new long[] {hash(keys[i]), offset};
+                offset += 8 + keys[i].length;
+                for (byte[] response : exchange.getValue()) {
+                    offset += 4 + response.length;
+                }
+                i++;
+            }
+            if (offset > Integer.MAX_VALUE) {
+                throw new IOException("Tape exceeds 2GB");
+            }
+            Arrays.sort(index, (a, b) -> Long.compare(a[0], b[0]));
+
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            try (OutputStream file = Files.newOutputStream(path);
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+                out.write(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(count);
+                for (long[] entry : index) {
+                    out.writeLong(entry[0]);
+                    out.writeLong(entry[1]);
+                }
+                i = 0;
+                for (List<byte[]> responses : exchanges.values()) {
+                    out.writeInt(keys[i].length);
+                    out.write(keys[i]);
+                    out.writeInt(responses.size());
+                    for (byte[] response : responses) {
+                        out.writeInt(response.length);
+                        out.write(response);
+                    }
+                    i++;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package tech.coinbub.daemon.testutils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+
+/**
+ * Carries JSON-RPC request bodies to a daemon and hands back the response
+ * bodies.
+ *
+ * Selected with `transport` in `docker.properties`:
+ *
+ * - `url` (default) - a `HttpURLConnection` per call
+ * - `pooled` - persistent sockets kept in a pool of up to
+ *   `transport.connections`, with responses read straight off the socket
+ * - the name of a class with a public `(URL, DaemonConfig)` constructor
+ *
+ * `transport.compression=true` asks the daemon for gzip responses, and
+ * `transport.timeout` sets the connect and read timeouts in milliseconds.
+ */
+public interface RpcTransport extends Closeable {
+
+    /**
+     * Sends one request.
+     *
+     * @param body writes the request body
+     * @return the response body, which must be closed to release the
+     * connection
+     * @throws IOException if the request fails or the daemon answers with an
+     * HTTP error and no body
+     */
+    InputStream send(RequestBody body) throws IOException;
+
+    /**
+     * Creates the transport configured for a daemon.
+     *
+     * @param url the daemon's RPC endpoint
+     * @param config the daemon configuration
+     * @return the transport
+     * @throws ReflectiveOperationException if a custom transport can't be
+     * instantiated
+     */
+    static RpcTransport create(final URL url, final DaemonConfig config) throws ReflectiveOperationException {
+        switch (config.getTransport()) {
+        case "url":
+            return new UrlConnectionTransport(url, config);
+        case "pooled":
+            return new PooledTransport(url, config);
+        default:
+            return (RpcTransport) Class.forName(config.getTransport())
+                    .getConstructor(URL.class, DaemonConfig.class)
+                    .newInstance(url, config);
+        }
+    }
+
+    @FunctionalInterface
+    interface RequestBody {
+        void writeTo(OutputStream out) throws IOException;
+    }
+}
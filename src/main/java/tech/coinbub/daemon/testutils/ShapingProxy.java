@@ -0,0 +1,321 @@
+package tech.coinbub.daemon.testutils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A TCP proxy on the loopback interface that makes the link to a daemon
+ * behave like a WAN link.
+ *
+ * Configured through `docker.properties`:
+ *
+ * - `shaping.latency` - milliseconds added in each direction, so a round
+ *   trip takes twice as long
+ * - `shaping.jitter` - up to this many extra milliseconds per chunk, drawn
+ *   uniformly; ordering is preserved
+ * - `shaping.bandwidth` - bytes per second in each direction, e.g. `256k`
+ *
+ * Latency is pipelined while bandwidth is serialized, as on a real link.
+ * Bytes and round trips are counted per RPC method in
+ * {@link DockerizedMetrics}. Each request is followed by its head and
+ * `Content-Length`, however the client's writes are split, and its method is
+ * read from the start of its body; the response bytes that follow are
+ * attributed to it. Batches count as `batch`.
+ */
+final class ShapingProxy implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShapingProxy.class);
+    private static final int CHUNK = 16384;
+    private static final Chunk EOF = new Chunk(null, 0);
+    private static final byte[] POST = "POST ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] METHOD = "\"method\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CRLFCRLF = "\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final int MAX_HEAD = 8192;
+    private static final int MAX_SNIFF = 1024;
+
+    private final InetSocketAddress upstream;
+    private final long latency;
+    private final long jitter;
+    private final long bandwidth;
+    private final ServerSocket server;
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+    private final ExecutorService threads = Executors.newCachedThreadPool((r) -> {
+        final Thread thread = new Thread(r, "dockerized-proxy");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile boolean closed = false;
+
+    ShapingProxy(final String host, final int port, final DaemonConfig config) throws IOException {
+        this.upstream = new InetSocketAddress(host, port);
+        this.latency = TimeUnit.MILLISECONDS.toNanos(config.getShapingLatency());
+        this.jitter = TimeUnit.MILLISECONDS.toNanos(config.getShapingJitter());
+        this.bandwidth = config.getShapingBandwidth();
+        this.server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        threads.execute(this::accept);
+        LOGGER.info("Shaping {}:{} through port {} ({}ms latency, {}ms jitter, {} bytes/s)",
+                host, port, server.getLocalPort(), config.getShapingLatency(), config.getShapingJitter(),
+                bandwidth == 0 ? "unlimited" : bandwidth);
+    }
+
+    int getPort() {
+        return server.getLocalPort();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            server.close();
+        } catch (IOException ex) {
+            LOGGER.debug("Failed to close proxy", ex);
+        }
+        for (Socket socket : sockets) {
+            closeQuietly(socket);
+        }
+        threads.shutdownNow();
+    }
+
+    private void accept() {
+        while (!closed) {
+            final Socket client;
+            try {
+                client = server.accept();
+            } catch (IOException ex) {
+                if (!closed) {
+                    LOGGER.warn("Proxy stopped accepting connections", ex);
+                }
+                return;
+            }
+            try {
+                final Socket daemon = new Socket();
+                daemon.connect(upstream);
+                client.setTcpNoDelay(true);
+                daemon.setTcpNoDelay(true);
+                sockets.add(client);
+                sockets.add(daemon);
+                final Connection connection = new Connection();
+                pipe(client, daemon, connection, true);
+                pipe(daemon, client, connection, false);
+            } catch (IOException ex) {
+                LOGGER.debug("Could not reach {}", upstream, ex);
+                closeQuietly(client);
+            }
+        }
+    }
+
+    /**
+     * Starts the reader and writer of one direction, connected by a queue of
+     * chunks stamped with their delivery time.
+     */
+    private void pipe(final Socket from, final Socket to, final Connection connection, final boolean request) {
+        final BlockingQueue<Chunk> queue = new LinkedBlockingQueue<>();
+        threads.execute(() -> {
+            long lastDue = 0;
+            try (InputStream in = from.getInputStream()) {
+                final byte[] buffer = new byte[CHUNK];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    final byte[] data = Arrays.copyOf(buffer, read);
+                    if (request) {
+                        connection.sniff(data);
+                    } else {
+                        DockerizedMetrics.recordTraffic(connection.method, 0, 0, read);
+                    }
+                    final long delay = latency + (jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter + 1) : 0);
+                    lastDue = Math.max(System.nanoTime() + delay, lastDue);
+                    queue.put(new Chunk(data, lastDue));
+                }
+            } catch (IOException | InterruptedException ex) {
+                LOGGER.trace("Proxy reader ended", ex);
+            } finally {
+                queue.offer(EOF);
+            }
+        });
+        threads.execute(() -> {
+            try (OutputStream out = to.getOutputStream()) {
+                while (true) {
+                    final Chunk chunk = queue.take();
+                    if (chunk == EOF) {
+                        to.shutdownOutput();
+                        return;
+                    }
+                    sleepUntil(chunk.due);
+                    if (bandwidth > 0) {
+                        sleepUntil(System.nanoTime() + chunk.data.length * 1_000_000_000L / bandwidth);
+                    }
+                    out.write(chunk.data);
+                    out.flush();
+                }
+            } catch (IOException | InterruptedException ex) {
+                LOGGER.trace("Proxy writer ended", ex);
+            } finally {
+                closeQuietly(from);
+                closeQuietly(to);
+            }
+        });
+    }
+
+    private static void sleepUntil(final long due) throws InterruptedException {
+        long remaining;
+        while ((remaining = due - System.nanoTime()) > 0) {
+            TimeUnit.NANOSECONDS.sleep(remaining);
+        }
+    }
+
+    private void closeQuietly(final Socket socket) {
+        sockets.remove(socket);
+        try {
+            socket.close();
+        } catch (IOException ex) {
+            LOGGER.trace("Failed to close socket", ex);
+        }
+    }
+
+    private static int indexOf(final byte[] data, final byte[] needle, final int from) {
+        return indexOf(data, needle, from, data.length);
+    }
+
+    private static int indexOf(final byte[] data, final byte[] needle, final int from, final int to) {
+        outer:
+        for (int i = from; i <= to - needle.length; i++) {
+            for (int j = 0; j < needle.length; j++) {
+                if (data[i + j] != needle[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Tracks which method a client connection is currently calling.
+     */
+    private static final class Connection {
+        private volatile String method = "unknown";
+        private byte[] pending = new byte[0];
+        private long remaining = 0;
+        private boolean sized = true;
+
+        /**
+         * Follows the requests in a chunk sent by the client. A request head
+         * and the start of its body are held back until the method can be
+         * read, then a round trip is recorded for it. Request bytes are
+         * counted against the method they belong to.
+         */
+        void sniff(final byte[] data) {
+            final byte[] buffer = concat(pending, data);
+            pending = new byte[0];
+            int pos = 0;
+            while (pos < buffer.length) {
+                if (remaining > 0) {
+                    final int length = (int) Math.min(remaining, buffer.length - pos);
+                    DockerizedMetrics.recordTraffic(method, 0, length, 0);
+                    remaining -= length;
+                    pos += length;
+                    continue;
+                }
+                if (!sized && indexOf(buffer, POST, pos) != pos) {
+                    // A body without a length runs until the next request
+                    DockerizedMetrics.recordTraffic(method, 0, buffer.length - pos, 0);
+                    return;
+                }
+                final int head = indexOf(buffer, CRLFCRLF, pos);
+                if (head < 0) {
+                    if (buffer.length - pos < MAX_HEAD) {
+                        pending = Arrays.copyOfRange(buffer, pos, buffer.length);
+                    } else {
+                        method = "unknown";
+                        sized = false;
+                        DockerizedMetrics.recordTraffic(method, 0, buffer.length - pos, 0);
+                    }
+                    return;
+                }
+                final int body = head + CRLFCRLF.length;
+                final long length = contentLength(new String(buffer, pos, head - pos, StandardCharsets.US_ASCII));
+                final int available = buffer.length - body;
+                final int end = length < 0 ? buffer.length : (int) Math.min(buffer.length, body + length);
+                final String found = method(buffer, body, end);
+                if (found == null && available < Math.min(length < 0 ? MAX_SNIFF : length, MAX_SNIFF)) {
+                    pending = Arrays.copyOfRange(buffer, pos, buffer.length);
+                    return;
+                }
+                method = found == null ? "unknown" : found;
+                DockerizedMetrics.recordTraffic(method, 1, body - pos, 0);
+                pos = body;
+                sized = length >= 0;
+                remaining = sized ? length : 0;
+            }
+        }
+
+        private static long contentLength(final String head) {
+            for (String line : head.split("\r\n")) {
+                final int colon = line.indexOf(':');
+                if (colon > 0 && "content-length".equalsIgnoreCase(line.substring(0, colon).trim())) {
+                    return Long.parseLong(line.substring(colon + 1).trim());
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return the method of the request body in `data[from, to)`, or
+         * null if it isn't all there
+         */
+        private static String method(final byte[] data, final int from, final int to) {
+            if (from < to && data[from] == '[') {
+                return "batch";
+            }
+            final int key = indexOf(data, METHOD, from, to);
+            if (key < 0) {
+                return null;
+            }
+            int start = key + METHOD.length;
+            while (start < to && data[start] != '"') {
+                start++;
+            }
+            int end = start + 1;
+            while (end < to && data[end] != '"') {
+                end++;
+            }
+            return end < to ? new String(data, start + 1, end - start - 1, StandardCharsets.UTF_8) : null;
+        }
+
+        private static byte[] concat(final byte[] first, final byte[] second) {
+            if (first.length == 0) {
+                return second;
+            }
+            final byte[] result = Arrays.copyOf(first, first.length + second.length);
+            System.arraycopy(second, 0, result, first.length, second.length);
+            return result;
+        }
+    }
+
+    private static final class Chunk {
+        private final byte[] data;
+        private final long due;
+
+        Chunk(final byte[] data, final long due) {
+            this.data = data;
+            this.due = due;
+        }
+    }
+}
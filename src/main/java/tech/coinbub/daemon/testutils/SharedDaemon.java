@@ -0,0 +1,156 @@
+package tech.coinbub.daemon.testutils;
+
+import com.github.dockerjava.api.DockerClient;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coordinates a single set of containers between several JVMs, such as
+ * surefire forks, that run with the same configuration.
+ *
+ * Each configuration fingerprint gets a directory under `java.io.tmpdir`
+ * holding a lock file and a registry of the process ids using the containers.
+ * The first JVM boots the containers while holding the lock; later JVMs wait
+ * for it and then attach to the same containers through fingerprint reuse.
+ * The last JVM to release them tears them down, still holding the lock, so a
+ * JVM arriving meanwhile never attaches to containers being removed. Entries
+ * for processes that no longer exist are pruned, so a crashed fork does not
+ * keep containers alive.
+ *
+ * Leases and snapshots are still per JVM, so forks should not rely on
+ * {@link RestoreSnapshot} while sharing. Commands using `{events}` are
+ * rejected, since the listener belongs to a single JVM.
+ */
+final class SharedDaemon {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SharedDaemon.class);
+    private static final Path PROC = Paths.get("/proc");
+
+    private final Path lockFile;
+    private final Path registry;
+    private final String pid;
+
+    SharedDaemon(final Path dir, final String pid) {
+        this.lockFile = dir.resolve("lock");
+        this.registry = dir.resolve("registry");
+        this.pid = pid;
+    }
+
+    /**
+     * Registers this JVM and starts or attaches to the shared containers.
+     * Releases them again when the JVM exits.
+     *
+     * @param config the daemon configuration
+     * @param docker the docker client
+     * @param imageId the id of the pulled image
+     * @return the pool, connected to the shared containers
+     * @throws Exception
+     */
+    static ContainerPool start(final DaemonConfig config, final DockerClient docker, final String imageId)
+            throws Exception {
+        final String jvm = ManagementFactory.getRuntimeMXBean().getName();
+        final SharedDaemon shared = new SharedDaemon(
+                Paths.get(System.getProperty("java.io.tmpdir"), "dockerized", config.fingerprint(imageId)),
+                jvm.substring(0, Math.max(jvm.indexOf('@'), 0)));
+        final ContainerPool pool = shared.acquire(() -> ContainerPool.start(config, docker, imageId));
+        Runtime.getRuntime()
+                .addShutdownHook(new Thread(() -> shared.release(pool::shutdown)));
+        return pool;
+    }
+
+    /**
+     * Starts or attaches to the shared resource under the lock, registering
+     * this process once it is up.
+     *
+     * @param start starts the resource, or attaches to the running one
+     * @return the result of `start`
+     * @throws Exception if `start` fails, in which case nothing is registered
+     */
+    <T> T acquire(final Callable<T> start) throws Exception {
+        try (FileChannel channel = lock()) {
+            // Closing the channel releases the lock
+            channel.lock();
+            final Set<String> pids = read();
+            if (pids.isEmpty()) {
+                LOGGER.info("First user of shared containers, starting them");
+            } else {
+                LOGGER.info("Attaching to containers shared with processes {}", pids);
+            }
+            final T started = start.call();
+            pids.add(pid);
+            write(pids);
+            return started;
+        }
+    }
+
+    /**
+     * Deregisters this process, running `teardown` under the lock if no other
+     * live process is using the resource.
+     *
+     * @param teardown stops the shared resource
+     */
+    void release(final Runnable teardown) {
+        try (FileChannel channel = lock()) {
+            channel.lock();
+            final Set<String> pids = read();
+            pids.remove(pid);
+            write(pids);
+            if (!pids.isEmpty()) {
+                LOGGER.info("Leaving shared containers running for processes {}", pids);
+                return;
+            }
+            teardown.run();
+        } catch (IOException ex) {
+            LOGGER.warn("Failed to update {}, leaving containers running", registry, ex);
+        }
+    }
+
+    /**
+     * @return the live processes registered, in registration order
+     * @throws IOException
+     */
+    Set<String> read() throws IOException {
+        final Set<String> pids = new LinkedHashSet<>();
+        if (!Files.exists(registry)) {
+            return pids;
+        }
+        for (String line : Files.readAllLines(registry, StandardCharsets.UTF_8)) {
+            final String entry = line.trim();
+            if (!entry.isEmpty() && isAlive(entry)) {
+                pids.add(entry);
+            }
+        }
+        return pids;
+    }
+
+    private FileChannel lock() throws IOException {
+        Files.createDirectories(lockFile.getParent());
+        return FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    private void write(final Set<String> pids) throws IOException {
+        if (pids.isEmpty()) {
+            Files.deleteIfExists(registry);
+            return;
+        }
+        Files.write(registry, pids, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Without `/proc` there is no portable way to check a process, so every
+     * entry is assumed to be alive.
+     */
+    private static boolean isAlive(final String pid) {
+        return !Files.isDirectory(PROC) || Files.isDirectory(PROC.resolve(pid));
+    }
+}
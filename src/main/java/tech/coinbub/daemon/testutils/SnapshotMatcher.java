@@ -0,0 +1,496 @@
+package tech.coinbub.daemon.testutils;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.hamcrest.Description;
+import org.hamcrest.Factory;
+import org.hamcrest.TypeSafeDiagnosingMatcher;
+
+/**
+ * Matches a bean against a golden JSON file, for responses too large to
+ * describe property by property.
+ *
+ * The bean is serialized with sorted keys on a background thread into a
+ * {@value #PIPE_SIZE}-byte pipe, and compared token by token with the file
+ * as both stream, so no tree is built and neither side is held in memory:
+ * beyond the bean itself, a comparison needs the pipe and the parser buffers.
+ * Objects whose keys are not sorted, e.g. in a hand-edited snapshot or a bean
+ * with `@JsonPropertyOrder`, are matched by name instead, which buffers the
+ * rest of that object on both sides. Volatile values are skipped by dotted path, as in
+ * {@link BeanPropertyMatcher}; a path applies to every element of the arrays
+ * it passes through, e.g. `tx.hash`.
+ *
+ * Snapshots live in `dockerizedSnapshotDir` (default
+ * `src/test/resources/snapshots`) as `<name>.json`. Run with
+ * `-DupdateSnapshots=true` to record missing or changed snapshots instead of
+ * failing.
+ */
+public class SnapshotMatcher<T> extends TypeSafeDiagnosingMatcher<T> {
+    static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, true)
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true)
+            .configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+    private static final int MAX_DIFFERENCES = 20;
+    static final int PIPE_SIZE = 64 * 1024;
+    private static final ExecutorService SERIALIZER = Executors.newCachedThreadPool((r) -> {
+        final Thread thread = new Thread(r, "snapshot-serializer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String name;
+    private final Path file;
+    private final Ignored ignored;
+
+    @Factory
+    public static <T> SnapshotMatcher<T> matchesSnapshot(String name, String... ignoredPaths) {
+        return new SnapshotMatcher<>(name, ignoredPaths);
+    }
+
+    public SnapshotMatcher(String name, String... ignoredPaths) {
+        this.name = name;
+        this.file = Paths.get(System.getProperty("dockerizedSnapshotDir", "src/test/resources/snapshots"),
+                name + ".json");
+        this.ignored = ignoredPaths.length == 0 ? null : new Ignored();
+        for (String path : ignoredPaths) {
+            Ignored node = ignored;
+            for (String segment : path.split("\\.")) {
+                node = node.children.computeIfAbsent(segment, (s) -> new Ignored());
+            }
+            node.all = true;
+        }
+    }
+
+    @Override
+    protected boolean matchesSafely(T item, Description mismatchDescription) {
+        final boolean update = Boolean.getBoolean("updateSnapshots");
+        try {
+            if (update || !Files.exists(file)) {
+                if (!update) {
+                    mismatchDescription.appendText("no snapshot at " + file
+                            + "; run with -DupdateSnapshots=true to record it");
+                    return false;
+                }
+                if (file.getParent() != null) {
+                    Files.createDirectories(file.getParent());
+                }
+                MAPPER.writerWithDefaultPrettyPrinter().writeValue(file.toFile(), item);
+                return true;
+            }
+
+            final boolean quiet = mismatchDescription instanceof Description.NullDescription;
+            final List<String> differences = new ArrayList<>();
+            try (PipedInputStream pipe = new PipedInputStream(PIPE_SIZE)) {
+                final Future<?> writer = serialize(item, new PipedOutputStream(pipe));
+                try (JsonParser expectedParser = MAPPER.getFactory().createParser(file.toFile());
+                        JsonParser actualParser = MAPPER.getFactory().createParser(pipe)) {
+                    new Comparison(expectedParser, actualParser, quiet ? 1 : MAX_DIFFERENCES, differences)
+                            .run(ignored);
+                } catch (IOException ex) {
+                    // Unblock the writer, then report its failure if it caused this one
+                    pipe.close();
+                    throw serializationFailure(writer, ex);
+                }
+            }
+            if (differences.isEmpty()) {
+                return true;
+            }
+            mismatchDescription.appendText("differed from snapshot " + file + ":");
+            for (String difference : differences) {
+                mismatchDescription.appendText("\n  " + difference);
+            }
+            if (differences.size() == MAX_DIFFERENCES) {
+                mismatchDescription.appendText("\n  (stopped after " + MAX_DIFFERENCES + " differences)");
+            }
+            return false;
+        } catch (IOException ex) {
+            mismatchDescription.appendText("could not be compared with " + file + ": " + ex);
+            return false;
+        }
+    }
+
+    /**
+     * Writes the item to `sink` on a background thread. A comparison that
+     * stops early closes the pipe, which ends the write with an error that
+     * nobody waits for.
+     */
+    private static Future<?> serialize(final Object item, final PipedOutputStream sink) {
+        return SERIALIZER.submit(() -> {
+            // PipedInputStream only wakes a waiting reader on flush
+            try (OutputStream out = new FilterOutputStream(sink) {
+                @Override
+                public void write(final byte[] b, final int off, final int len) throws IOException {
+                    out.write(b, off, len);
+                    out.flush();
+                }
+            }) {
+                MAPPER.writeValue(out, item);
+            }
+            return null;
+        });
+    }
+
+    private static IOException serializationFailure(final Future<?> writer, final IOException readFailure) {
+        try {
+            writer.get();
+            return readFailure;
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof JsonProcessingException) {
+                return (JsonProcessingException) ex.getCause();
+            }
+            // Anything else is the closed pipe, or an error from the bean itself
+            return ex.getCause() instanceof IOException ? readFailure : new IOException(ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return readFailure;
+        }
+    }
+
+    @Override
+    public void describeTo(Description description) {
+        description.appendText("matches snapshot ");
+        description.appendValue(name);
+    }
+
+    /**
+     * A tree of ignored paths; `all` marks a path ignored entirely.
+     */
+    private static final class Ignored {
+        private final Map<String, Ignored> children = new HashMap<>();
+        private boolean all = false;
+    }
+
+    /**
+     * Thrown to abandon a comparison once enough differences are found.
+     */
+    private static final class Enough extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Enough() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * A field present on one side only, buffered until its object ends.
+     */
+    private static final class Field {
+        private final boolean missing;
+        private final String name;
+        private final TokenBuffer value;
+
+        Field(boolean missing, String name, TokenBuffer value) {
+            this.missing = missing;
+            this.name = name;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Walks both token streams in lockstep. Keys are normally sorted on both
+     * sides, so objects are compared as a merge of their field names. When a
+     * key arrives out of order, the rest of that object is buffered on both
+     * sides and matched by name.
+     */
+    private static final class Comparison {
+        private JsonParser expected;
+        private JsonParser actual;
+        private final int limit;
+        private final List<String> differences;
+        private String[] names = new String[16];
+        private int[] indices = new int[16];
+        private int depth = 0;
+
+        Comparison(JsonParser expected, JsonParser actual, int limit, List<String> differences) {
+            this.expected = expected;
+            this.actual = actual;
+            this.limit = limit;
+            this.differences = differences;
+        }
+
+        void run(Ignored ignored) throws IOException {
+            expected.nextToken();
+            actual.nextToken();
+            try {
+                compare(ignored);
+            } catch (Enough ex) {
+                // Described enough already
+            }
+        }
+
+        /**
+         * Compares the values both parsers are positioned on, leaving each on
+         * the last token of its value.
+         */
+        private void compare(Ignored ignored) throws IOException {
+            if (ignored != null && ignored.all) {
+                expected.skipChildren();
+                actual.skipChildren();
+                return;
+            }
+            final JsonToken e = expected.currentToken();
+            final JsonToken a = actual.currentToken();
+            if (e == JsonToken.START_OBJECT && a == JsonToken.START_OBJECT) {
+                compareObjects(ignored);
+            } else if (e == JsonToken.START_ARRAY && a == JsonToken.START_ARRAY) {
+                compareArrays(ignored);
+            } else {
+                if (!scalarsEqual(e, a)) {
+                    report("expected " + describe(expected) + " but was " + describe(actual));
+                }
+                expected.skipChildren();
+                actual.skipChildren();
+            }
+        }
+
+        private void compareObjects(Ignored ignored) throws IOException {
+            final List<Field> skipped = new ArrayList<>();
+            String lastExpected = null;
+            String lastActual = null;
+            JsonToken e = expected.nextToken();
+            JsonToken a = actual.nextToken();
+            while (e != JsonToken.END_OBJECT || a != JsonToken.END_OBJECT) {
+                if (outOfOrder(expected, lastExpected) || outOfOrder(actual, lastActual)) {
+                    compareByName(ignored, skipped);
+                    return;
+                }
+                final int order = e == JsonToken.END_OBJECT ? 1
+                        : a == JsonToken.END_OBJECT ? -1
+                        : expected.getCurrentName().compareTo(actual.getCurrentName());
+                if (order == 0) {
+                    final String field = expected.getCurrentName();
+                    lastExpected = field;
+                    lastActual = field;
+                    push(field, -1);
+                    expected.nextToken();
+                    actual.nextToken();
+                    compare(child(ignored, field));
+                    pop();
+                    e = expected.nextToken();
+                    a = actual.nextToken();
+                } else if (order < 0) {
+                    lastExpected = expected.getCurrentName();
+                    e = skipField(expected, ignored, true, skipped);
+                } else {
+                    lastActual = actual.getCurrentName();
+                    a = skipField(actual, ignored, false, skipped);
+                }
+            }
+            for (Field field : skipped) {
+                push(field.name, -1);
+                report((field.missing ? "missing " : "unexpected ") + describe(field.value));
+                pop();
+            }
+        }
+
+        private static boolean outOfOrder(JsonParser parser, String last) throws IOException {
+            return last != null && parser.currentToken() == JsonToken.FIELD_NAME
+                    && parser.getCurrentName().compareTo(last) <= 0;
+        }
+
+        private static JsonToken skipField(JsonParser parser, Ignored ignored, boolean missing, List<Field> skipped)
+                throws IOException {
+            final String field = parser.getCurrentName();
+            parser.nextToken();
+            if (isIgnored(child(ignored, field))) {
+                parser.skipChildren();
+            } else {
+                skipped.add(new Field(missing, field, buffer(parser)));
+            }
+            return parser.nextToken();
+        }
+
+        /**
+         * Finishes an object whose keys turned out not to be sorted, matching
+         * the fields left on each side by name.
+         */
+        private void compareByName(Ignored ignored, List<Field> skipped) throws IOException {
+            final Map<String, TokenBuffer> expectedFields = new LinkedHashMap<>();
+            final Map<String, TokenBuffer> actualFields = new LinkedHashMap<>();
+            for (Field field : skipped) {
+                (field.missing ? expectedFields : actualFields).put(field.name, field.value);
+            }
+            collect(expected, expectedFields);
+            collect(actual, actualFields);
+            for (Map.Entry<String, TokenBuffer> field : expectedFields.entrySet()) {
+                final Ignored fieldIgnored = child(ignored, field.getKey());
+                final TokenBuffer other = actualFields.remove(field.getKey());
+                push(field.getKey(), -1);
+                if (other != null) {
+                    compareBuffered(field.getValue(), other, fieldIgnored);
+                } else if (!isIgnored(fieldIgnored)) {
+                    report("missing " + describe(field.getValue()));
+                }
+                pop();
+            }
+            for (Map.Entry<String, TokenBuffer> field : actualFields.entrySet()) {
+                if (!isIgnored(child(ignored, field.getKey()))) {
+                    push(field.getKey(), -1);
+                    report("unexpected " + describe(field.getValue()));
+                    pop();
+                }
+            }
+        }
+
+        /**
+         * Buffers the remaining fields of the object the parser is in,
+         * leaving it on the end of the object.
+         */
+        private static void collect(JsonParser parser, Map<String, TokenBuffer> fields) throws IOException {
+            JsonToken token = parser.currentToken();
+            while (token != JsonToken.END_OBJECT) {
+                final String field = parser.getCurrentName();
+                parser.nextToken();
+                fields.put(field, buffer(parser));
+                token = parser.nextToken();
+            }
+        }
+
+        private void compareBuffered(TokenBuffer expectedValue, TokenBuffer actualValue, Ignored ignored)
+                throws IOException {
+            final JsonParser outerExpected = expected;
+            final JsonParser outerActual = actual;
+            try (JsonParser e = expectedValue.asParser(); JsonParser a = actualValue.asParser()) {
+                expected = e;
+                actual = a;
+                expected.nextToken();
+                actual.nextToken();
+                compare(ignored);
+            } finally {
+                expected = outerExpected;
+                actual = outerActual;
+            }
+        }
+
+        private static TokenBuffer buffer(JsonParser parser) throws IOException {
+            final TokenBuffer buffer = new TokenBuffer(parser);
+            buffer.copyCurrentStructure(parser);
+            return buffer;
+        }
+
+        private void compareArrays(Ignored ignored) throws IOException {
+            int index = 0;
+            JsonToken e = expected.nextToken();
+            JsonToken a = actual.nextToken();
+            while (e != JsonToken.END_ARRAY && a != JsonToken.END_ARRAY) {
+                push(null, index++);
+                compare(ignored);
+                pop();
+                e = expected.nextToken();
+                a = actual.nextToken();
+            }
+            if (e == a) {
+                return;
+            }
+            int expectedItems = index;
+            int actualItems = index;
+            while (e != JsonToken.END_ARRAY) {
+                expected.skipChildren();
+                expectedItems++;
+                e = expected.nextToken();
+            }
+            while (a != JsonToken.END_ARRAY) {
+                actual.skipChildren();
+                actualItems++;
+                a = actual.nextToken();
+            }
+            report("expected " + expectedItems + " items but had " + actualItems);
+        }
+
+        private boolean scalarsEqual(JsonToken e, JsonToken a) throws IOException {
+            if (e.isNumeric() && a.isNumeric()) {
+                if (e == JsonToken.VALUE_NUMBER_FLOAT || a == JsonToken.VALUE_NUMBER_FLOAT) {
+                    return expected.getDoubleValue() == actual.getDoubleValue();
+                }
+                return expected.getBigIntegerValue().equals(actual.getBigIntegerValue());
+            }
+            if (e != a) {
+                return false;
+            }
+            return e != JsonToken.VALUE_STRING || expected.getText().equals(actual.getText());
+        }
+
+        private static Ignored child(Ignored ignored, String field) {
+            return ignored == null ? null : ignored.children.get(field);
+        }
+
+        private static boolean isIgnored(Ignored ignored) {
+            return ignored != null && ignored.all;
+        }
+
+        private static String describe(TokenBuffer buffer) throws IOException {
+            try (JsonParser parser = buffer.asParser()) {
+                parser.nextToken();
+                return describe(parser);
+            }
+        }
+
+        private static String describe(JsonParser parser) throws IOException {
+            switch (parser.currentToken()) {
+            case START_OBJECT:
+                return "an object";
+            case START_ARRAY:
+                return "an array";
+            case VALUE_STRING:
+                return "\"" + parser.getText() + "\"";
+            default:
+                return parser.getText();
+            }
+        }
+
+        private void push(String field, int index) {
+            if (depth == names.length) {
+                names = Arrays.copyOf(names, depth * 2);
+                indices = Arrays.copyOf(indices, depth * 2);
+            }
+            names[depth] = field;
+            indices[depth] = index;
+            depth++;
+        }
+
+        private void pop() {
+            depth--;
+        }
+
+        private void report(String problem) {
+            final StringBuilder path = new StringBuilder();
+            for (int i = 0; i < depth; i++) {
+                if (names[i] == null) {
+                    path.append('[').append(indices[i]).append(']');
+                } else {
+                    if (path.length() > 0) {
+                        path.append('.');
+                    }
+                    path.append(names[i]);
+                }
+            }
+            differences.add((path.length() == 0 ? "<root>" : path.toString()) + ": " + problem);
+            if (differences.size() >= limit) {
+                throw new Enough();
+            }
+        }
+    }
+}
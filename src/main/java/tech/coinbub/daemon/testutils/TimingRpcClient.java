@@ -0,0 +1,30 @@
+package tech.coinbub.daemon.testutils;
+
+import com.googlecode.jsonrpc4j.IJsonRpcClient;
+import java.lang.reflect.Type;
+import java.util.Map;
+
+/**
+ * Records the latency of every call in {@link DockerizedMetrics}.
+ */
+final class TimingRpcClient extends AbstractRpcClient {
+    private final IJsonRpcClient delegate;
+
+    TimingRpcClient(final IJsonRpcClient delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Object invoke(final String methodName, final Object argument, final Type returnType,
+            final Map<String, String> extraHeaders) throws Throwable {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final Object result = delegate.invoke(methodName, argument, returnType, extraHeaders);
+            failed = false;
+            return result;
+        } finally {
+            DockerizedMetrics.recordCall(methodName, System.nanoTime() - start, failed);
+        }
+    }
+}
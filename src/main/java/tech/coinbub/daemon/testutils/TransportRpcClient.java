@@ -0,0 +1,28 @@
+package tech.coinbub.daemon.testutils;
+
+import com.googlecode.jsonrpc4j.JsonRpcClient;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.util.Map;
+
+/**
+ * Sends calls over an {@link RpcTransport}, using jsonrpc4j only to encode
+ * requests and bind responses. Responses are bound directly from the stream
+ * the transport returns.
+ */
+final class TransportRpcClient extends AbstractRpcClient {
+    private final JsonRpcClient codec = new JsonRpcClient(RpcTape.MAPPER);
+    private final RpcTransport transport;
+
+    TransportRpcClient(final RpcTransport transport) {
+        this.transport = transport;
+    }
+
+    @Override
+    public Object invoke(final String methodName, final Object argument, final Type returnType,
+            final Map<String, String> extraHeaders) throws Throwable {
+        try (InputStream in = transport.send((out) -> codec.invoke(methodName, argument, out))) {
+            return codec.readResponse(returnType, in);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package tech.coinbub.daemon.testutils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Sends each request over a `HttpURLConnection`, leaving connection reuse to
+ * the JDK.
+ */
+final class UrlConnectionTransport implements RpcTransport {
+    private final URL url;
+    private final Map<String, String> headers;
+    private final int timeout;
+
+    UrlConnectionTransport(final URL url, final DaemonConfig config) {
+        this.url = url;
+        this.headers = Util.headers(config.getRpcUser(), config.getRpcPass());
+        if (config.isTransportCompression()) {
+            headers.put("Accept-Encoding", "gzip");
+        }
+        this.timeout = config.getTransportTimeout();
+    }
+
+    @Override
+    public InputStream send(final RequestBody body) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setConnectTimeout(timeout);
+        connection.setReadTimeout(timeout);
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            connection.setRequestProperty(header.getKey(), header.getValue());
+        }
+        try (OutputStream out = connection.getOutputStream()) {
+            body.writeTo(out);
+        }
+        final InputStream in = connection.getResponseCode() >= 400
+                ? connection.getErrorStream()
+                : connection.getInputStream();
+        if (in == null) {
+            connection.disconnect();
+            throw new IOException("HTTP " + connection.getResponseCode() + " from " + url);
+        }
+        if ("gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+            return new GZIPInputStream(in);
+        }
+        // Closing rather than disconnecting lets the JDK keep the socket alive
+        return in;
+    }
+
+    @Override
+    public void close() {
+        // Nothing held between requests
+    }
+}
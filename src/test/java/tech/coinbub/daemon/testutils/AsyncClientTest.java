@@ -0,0 +1,134 @@
+package tech.coinbub.daemon.testutils;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import tech.coinbub.daemon.support.TestServer;
+
+public class AsyncClientTest {
+    public interface FutureServer {
+        CompletableFuture<Integer> add(int a, int b);
+    }
+
+    public interface BlockingServer {
+        int add(int a, int b) throws IOException;
+    }
+
+    /**
+     * Adds, or throws the configured error, counting its calls.
+     */
+    public static final class Server implements TestServer {
+        private final RuntimeException error;
+        private final AtomicInteger calls = new AtomicInteger();
+
+        Server(final RuntimeException error) {
+            this.error = error;
+        }
+
+        @Override
+        public int add(final int a, final int b) {
+            calls.incrementAndGet();
+            if (error != null) {
+                throw error;
+            }
+            return a + b;
+        }
+    }
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @AfterEach
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private AsyncClient<TestServer> client(final RuntimeException error) {
+        return new AsyncClient<>(new Server(error), executor);
+    }
+
+    @Test
+    public void callTest() throws Exception {
+        assertThat(client(null).call((c) -> c.add(1, 2)).get(), is(equalTo(3)));
+    }
+
+    @Test
+    public void asTest() throws Exception {
+        final AsyncClient<TestServer> client = client(null);
+        assertThat(client.as(FutureServer.class).add(2, 3).get(), is(equalTo(5)));
+        assertThat(client.as(BlockingServer.class).add(2, 3), is(equalTo(5)));
+    }
+
+    @Test
+    public void runtimeErrorTest() {
+        final IllegalStateException error = new IllegalStateException("rejected");
+        final AsyncClient<TestServer> client = client(error);
+        final ExecutionException ex = assertThrows(ExecutionException.class,
+                () -> client.as(FutureServer.class).add(1, 2).get());
+        assertThat(ex.getCause(), is(sameInstance(error)));
+        assertThat(assertThrows(IllegalStateException.class, () -> client.as(BlockingServer.class).add(1, 2)),
+                is(sameInstance(error)));
+    }
+
+    @Test
+    public void undeclaredErrorTest() {
+        final IOException error = new IOException("connection reset");
+        final AsyncClient<TestServer> client = client(new UndeclaredThrowableException(error));
+        final ExecutionException ex = assertThrows(ExecutionException.class,
+                () -> client.as(FutureServer.class).add(1, 2).get());
+        assertThat(ex.getCause(), is(sameInstance(error)));
+        assertThat(assertThrows(IOException.class, () -> client.as(BlockingServer.class).add(1, 2)),
+                is(sameInstance(error)));
+    }
+
+    @Test
+    public void objectMethodsTest() {
+        final Server server = new Server(null);
+        final AsyncClient<TestServer> client = new AsyncClient<>(server, executor);
+        final FutureServer view = client.as(FutureServer.class);
+        final FutureServer other = client.as(FutureServer.class);
+        assertThat(view.equals(view), is(true));
+        assertThat(view.equals(other), is(false));
+        assertThat(view.hashCode(), is(equalTo(view.hashCode())));
+        assertThat(view.hashCode(), is(not(equalTo(other.hashCode()))));
+        assertThat(view.toString(), startsWith(FutureServer.class.getName() + "@"));
+        assertThat(server.calls.get(), is(equalTo(0)));
+    }
+
+    @Test
+    public void executorRebuiltTest() throws Exception {
+        final DaemonContainer container = DaemonContainer.replay(DaemonConfigTest.config(), new AbstractRpcClient() {
+            @Override
+            public Object invoke(final String methodName, final Object argument, final Type returnType,
+                    final Map<String, String> extraHeaders) {
+                throw new UnsupportedOperationException(methodName);
+            }
+        });
+        final AsyncClient<TestServer> before = container.async(TestServer.class);
+        assertThat(container.async(TestServer.class), is(sameInstance(before)));
+        assertThat(before.call((c) -> 1).get(), is(equalTo(1)));
+
+        container.stop();
+        assertThrows(RejectedExecutionException.class, () -> before.call((c) -> 2));
+
+        final AsyncClient<TestServer> after = container.async(TestServer.class);
+        assertThat(after, is(not(sameInstance(before))));
+        assertThat(after.call((c) -> 3).get(), is(equalTo(3)));
+        container.stop();
+    }
+}
@@ -0,0 +1,167 @@
+package tech.coinbub.daemon.testutils;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.everyItem;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static tech.coinbub.daemon.testutils.BeanMatcher.has;
+import static tech.coinbub.daemon.testutils.BeanMatcher.hasOnly;
+import static tech.coinbub.daemon.testutils.BeanPropertyMatcher.property;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.hamcrest.StringDescription;
+import org.junit.jupiter.api.Test;
+
+public class BeanMatcherTest {
+    public static class Tx {
+        private final String txid;
+        private final Integer confirmations;
+        private final String comment;
+
+        public Tx(final String txid, final Integer confirmations, final String comment) {
+            this.txid = txid;
+            this.confirmations = confirmations;
+            this.comment = comment;
+        }
+    }
+
+    public static class Block {
+        private final String hash;
+        private final Long height;
+
+        public Block(final String hash, final Long height) {
+            this.hash = hash;
+            this.height = height;
+        }
+    }
+
+    public static class Account implements java.io.Serializable {
+        private static final long serialVersionUID = 1L;
+        private static String lastCreated = "ignored";
+        private final String name;
+        private final String label;
+
+        public Account(final String name, final String label) {
+            this.name = name;
+            this.label = label;
+        }
+    }
+
+    private static String mismatch(final BeanMatcher<?> matcher, final Object item) {
+        final StringDescription description = new StringDescription();
+        matcher.describeMismatch(item, description);
+        return description.toString();
+    }
+
+    @Test
+    public void hasTest() {
+        final BeanMatcher<Tx> matcher = has(property("txid", is("a")), property("confirmations", is(1)));
+        assertThat(matcher.matches(new Tx("a", 1, "ignored")), is(true));
+        assertThat(matcher.matches(new Tx("a", 2, null)), is(false));
+        assertThat(matcher.matches(null), is(false));
+    }
+
+    @Test
+    public void hasOnlyTest() {
+        final BeanMatcher<Tx> matcher = hasOnly(property("txid", is("a")), property("confirmations", is(1)));
+        assertThat(matcher.matches(new Tx("a", 1, null)), is(true));
+        assertThat(matcher.matches(new Tx("a", 1, "extra")), is(false));
+        assertThat(mismatch(matcher, new Tx("a", 1, "extra")),
+                is(equalTo("property \"comment\" was \"extra\" \n")));
+    }
+
+    @Test
+    public void hasOnlyIgnoresStaticFieldsTest() {
+        final BeanMatcher<Account> matcher = hasOnly(property("name", is("alice")));
+        assertThat(matcher.matches(new Account("alice", null)), is(true));
+        assertThat(matcher.matches(new Account("alice", "extra")), is(false));
+        assertThat(mismatch(matcher, new Account("alice", "extra")),
+                is(equalTo("property \"label\" was \"extra\" \n")));
+    }
+
+    @Test
+    public void hasOnlyPerClassTest() {
+        final BeanMatcher<Object> matcher = hasOnly(property("txid", is("a")));
+        assertThat(matcher.matches(new Tx("a", null, null)), is(true));
+        // Block has no txid, and its own fields are the implicit nulls
+        assertThat(matcher.matches(new Block(null, null)), is(false));
+        assertThat(mismatch(matcher, new Block("h", null)), is(equalTo(
+                "property \"txid\" could not be read: no field or getter \"txid\" on " + Block.class.getName()
+                + " \n, property \"hash\" was \"h\" \n")));
+        // Cached implicit nulls for Tx are unaffected
+        assertThat(matcher.matches(new Tx("a", 1, null)), is(false));
+        assertThat(matcher.matches(new Tx("a", null, null)), is(true));
+    }
+
+    @Test
+    public void describeToTest() {
+        assertThat(StringDescription.toString(has(property("txid", is("a")))),
+                is(equalTo("property \"txid\" = is \"a\"  \n")));
+        assertThat(StringDescription.toString(hasOnly(property("txid", is("a")))),
+                is(equalTo("property \"txid\" = is \"a\"  \nand no other non-null fields \n")));
+    }
+
+    @Test
+    public void describeToNamesOnlyFailuresTest() throws Exception {
+        final BeanMatcher<Tx> matcher = hasOnly(property("txid", is("a")), property("confirmations", is(1)));
+        final AssertionError error = assertThrows(AssertionError.class,
+                () -> assertThat(new Tx("a", 2, "extra"), matcher));
+        assertThat(error.getMessage(), is(equalTo("\nExpected: , property \"confirmations\" = is <1>  \n"
+                + ", property \"comment\" = is null  \n"
+                + "\n     but: , property \"confirmations\" was <2> \n, property \"comment\" was \"extra\" \n")));
+        // Another thread has seen no failure and still gets the full description
+        final String[] other = new String[1];
+        final Thread thread = new Thread(() -> other[0] = StringDescription.toString(matcher));
+        thread.start();
+        thread.join();
+        assertThat(other[0], is(equalTo("property \"txid\" = is \"a\"  \n, property \"confirmations\" = is <1>  \n"
+                + "and no other non-null fields \n")));
+    }
+
+    @Test
+    public void describeMismatchUsesGivenItemTest() {
+        final BeanMatcher<Tx> matcher = has(property("txid", is("a")), property("confirmations", is(1)));
+        final Tx wrongTxid = new Tx("b", 1, null);
+        final Tx wrongConfirmations = new Tx("a", 2, null);
+        assertThat(matcher.matches(wrongTxid), is(false));
+        assertThat(matcher.matches(wrongConfirmations), is(false));
+        assertThat(mismatch(matcher, wrongTxid), is(equalTo("property \"txid\" was \"b\" \n")));
+        assertThat(mismatch(matcher, wrongConfirmations), is(equalTo("property \"confirmations\" was <2> \n")));
+    }
+
+    @Test
+    public void everyItemTest() {
+        final BeanMatcher<Tx> matcher = has(property("confirmations", is(1)));
+        final List<Tx> items = Arrays.asList(new Tx("a", 1, null), new Tx("b", 3, null), new Tx("c", 1, null));
+        final AssertionError error = assertThrows(AssertionError.class,
+                () -> assertThat(items, everyItem(matcher)));
+        assertThat(error.getMessage().contains("property \"confirmations\" was <3>"), is(true));
+        assertThat(Arrays.asList(new Tx("a", 1, null), new Tx("c", 1, "x")), everyItem(matcher));
+    }
+
+    @Test
+    public void concurrentReuseTest() throws Exception {
+        final BeanMatcher<Tx> matcher = hasOnly(property("txid", not(is("bad"))));
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                final Tx tx = i % 3 == 0 ? new Tx("bad", null, null) : new Tx("tx" + i, null, null);
+                final boolean expected = i % 3 != 0;
+                results.add(executor.submit(() -> matcher.matches(tx) == expected
+                        && mismatch(matcher, tx).isEmpty() == expected));
+            }
+            for (Future<Boolean> result : results) {
+                assertThat(result.get(), is(true));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
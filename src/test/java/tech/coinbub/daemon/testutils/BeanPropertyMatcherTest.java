@@ -0,0 +1,138 @@
+package tech.coinbub.daemon.testutils;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static tech.coinbub.daemon.testutils.BeanPropertyMatcher.property;
+import org.hamcrest.StringDescription;
+import org.junit.jupiter.api.Test;
+
+public class BeanPropertyMatcherTest {
+    public static class Inner {
+        private final String value;
+
+        public Inner(final String value) {
+            this.value = value;
+        }
+    }
+
+    public static class Bean {
+        private static final String LIMIT = "static";
+        private final int amount;
+        private final Inner inner;
+        private final String shadowed = "field";
+
+        public Bean(final int amount, final Inner inner) {
+            this.amount = amount;
+            this.inner = inner;
+        }
+
+        public Inner getInner() {
+            return inner;
+        }
+
+        public String getShadowed() {
+            return "getter";
+        }
+
+        public String getLabel() {
+            return "amount " + amount;
+        }
+
+        public String getBroken() {
+            throw new IllegalStateException("boom");
+        }
+    }
+
+    public static class Child extends Bean {
+        public Child() {
+            super(7, null);
+        }
+    }
+
+    private static String mismatch(final BeanPropertyMatcher<Object> matcher, final Object item) {
+        final StringDescription description = new StringDescription();
+        matcher.describeMismatch(item, description);
+        return description.toString();
+    }
+
+    @Test
+    public void fieldOnlyTest() {
+        assertThat(new Bean(5, null), property("amount", is(5)));
+        assertThat(property("amount", is(6)).matches(new Bean(5, null)), is(false));
+    }
+
+    @Test
+    public void inheritedFieldTest() {
+        assertThat(new Child(), property("amount", is(7)));
+    }
+
+    @Test
+    public void getterOnlyTest() {
+        assertThat(new Bean(5, null), property("label", is("amount 5")));
+    }
+
+    @Test
+    public void fieldPreferredForLastSegmentTest() {
+        assertThat(new Bean(5, null), property("shadowed", is("field")));
+        assertThat(PropertyAccessor.forField(Bean.class, "shadowed").exists(), is(true));
+    }
+
+    @Test
+    public void getterPreferredForIntermediateSegmentsTest() throws Throwable {
+        assertThat(PropertyAccessor.forGetter(Bean.class, "shadowed").get(new Bean(5, null)),
+                is(equalTo((Object) "getter")));
+    }
+
+    @Test
+    public void dottedPathTest() {
+        final Bean bean = new Bean(5, new Inner("deep"));
+        assertThat(bean, property("inner.value", is("deep")));
+        assertThat(mismatch(property("inner.value", is("shallow")), bean),
+                is(equalTo("property \"inner.value\" was \"deep\"")));
+    }
+
+    @Test
+    public void nullMidwayTest() {
+        assertThat(mismatch(property("inner.value", is("deep")), new Bean(5, null)),
+                is(equalTo("property \"inner.value\" could not be read: \"inner\" was null")));
+    }
+
+    @Test
+    public void missingPropertyTest() {
+        assertThat(mismatch(property("nope", is(1)), new Bean(5, null)),
+                is(equalTo("property \"nope\" could not be read: no field or getter \"nope\" on "
+                        + Bean.class.getName())));
+        assertThat(mismatch(property("nope.value", is(1)), new Bean(5, null)),
+                is(equalTo("property \"nope.value\" could not be read: no field or getter \"nope\" on "
+                        + Bean.class.getName())));
+    }
+
+    @Test
+    public void staticFieldTest() {
+        assertThat(property("LIMIT", is("static")).matches(new Bean(5, null)), is(false));
+        assertThat(mismatch(property("LIMIT", is("static")), new Bean(5, null)),
+                is(equalTo("property \"LIMIT\" could not be read: no field or getter \"LIMIT\" on "
+                        + Bean.class.getName())));
+        assertThat(property("LIMIT", is("static")).matches(new Child()), is(false));
+    }
+
+    @Test
+    public void throwingGetterTest() {
+        assertThat(mismatch(property("broken", is("x")), new Bean(5, null)),
+                is(equalTo("property \"broken\" could not be read: reading \"broken\" threw "
+                        + "java.lang.IllegalStateException: boom")));
+    }
+
+    @Test
+    public void valueMismatchDescriptionTest() {
+        assertThat(mismatch(property("amount", is(6)), new Bean(5, null)),
+                is(equalTo("property \"amount\" was <5>")));
+    }
+
+    @Test
+    public void describeToTest() {
+        assertThat(StringDescription.toString(property("amount", is(6))),
+                is(equalTo("property \"amount\" = is <6> ")));
+    }
+}
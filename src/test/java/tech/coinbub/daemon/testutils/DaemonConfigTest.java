@@ -0,0 +1,151 @@
+package tech.coinbub.daemon.testutils;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.util.Arrays;
+import java.util.Properties;
+import org.junit.jupiter.api.Test;
+import tech.coinbub.daemon.support.TestServer;
+
+public class DaemonConfigTest {
+    static Properties properties(final String... pairs) {
+        final Properties props = new Properties();
+        props.setProperty("image", "coinbub/dockerized-test");
+        props.setProperty("port", "8080");
+        props.setProperty("class", TestServer.class.getName());
+        for (int i = 0; i < pairs.length; i += 2) {
+            props.setProperty(pairs[i], pairs[i + 1]);
+        }
+        return props;
+    }
+
+    static DaemonConfig config(final String... pairs) throws ClassNotFoundException {
+        return new DaemonConfig(properties(pairs), null);
+    }
+
+    @Test
+    public void parseBytesTest() {
+        assertThat(DaemonConfig.parseBytes("1024"), is(equalTo(1024L)));
+        assertThat(DaemonConfig.parseBytes("256k"), is(equalTo(256L * 1024)));
+        assertThat(DaemonConfig.parseBytes("512M"), is(equalTo(512L * 1024 * 1024)));
+        assertThat(DaemonConfig.parseBytes(" 2g "), is(equalTo(2L * 1024 * 1024 * 1024)));
+        assertThrows(NumberFormatException.class, () -> DaemonConfig.parseBytes("12t"));
+    }
+
+    @Test
+    public void ephemeralDefaultsTest() throws Exception {
+        final DaemonConfig config = config("ephemeral", "true", "conf", "/root/.bitcoin/");
+        assertThat(config.isEphemeral(), is(true));
+        assertThat(config.getTmpfsPath(), is(equalTo("/root/.bitcoin/regtest")));
+        assertThat(config.getTmpfsSize(), is(equalTo("512m")));
+        assertThat(config.getMemoryLimit(), is(nullValue()));
+        assertThat(config.getCpus(), is(nullValue()));
+        assertThat(config.getStopTimeout(), is(equalTo(0)));
+    }
+
+    @Test
+    public void ephemeralSettingsTest() throws Exception {
+        final DaemonConfig config = config("ephemeral", "true", "conf", "/root/.bitcoin",
+                "ephemeral.datadir", "/data", "ephemeral.tmpfsSize", "64m",
+                "ephemeral.memory", "1g", "ephemeral.cpus", "1.5", "ephemeral.stopTimeout", "5");
+        assertThat(config.getTmpfsPath(), is(equalTo("/data")));
+        assertThat(config.getTmpfsSize(), is(equalTo("64m")));
+        assertThat(config.getMemoryLimit(), is(equalTo(1L << 30)));
+        assertThat(config.getCpus(), is(equalTo(1.5)));
+        assertThat(config.getStopTimeout(), is(equalTo(5)));
+    }
+
+    @Test
+    public void fingerprintTest() throws Exception {
+        final String plain = config().fingerprint("sha256:abc");
+        assertThat(config().fingerprint("sha256:abc"), is(equalTo(plain)));
+        assertThat(config().fingerprint("sha256:def"), is(not(equalTo(plain))));
+        assertThat(config("cmd", "daemon -regtest").fingerprint("sha256:abc"), is(not(equalTo(plain))));
+        assertThat(config("ephemeral", "true").fingerprint("sha256:abc"), is(not(equalTo(plain))));
+        assertThat(config("ephemeral", "true", "ephemeral.memory", "1g").fingerprint("sha256:abc"),
+                is(not(equalTo(config("ephemeral", "true").fingerprint("sha256:abc")))));
+    }
+
+    @Test
+    public void eventsCommandTest() throws Exception {
+        final DaemonConfig config = config("cmd", "daemon -blocknotify=\"curl -s {events}/block/%s\"")
+                .withEvents("http://172.17.0.1:4000");
+        assertThat(config.getCmd(), is(equalTo(new String[] {
+            "daemon", "-blocknotify=curl -s http://172.17.0.1:4000/dockerized-test/block/%s"})));
+        assertThat(config.getCmd("dockerized-test-1"), is(equalTo(new String[] {
+            "daemon", "-blocknotify=curl -s http://172.17.0.1:4000/dockerized-test-1/block/%s"})));
+        assertThat(config("cmd", "daemon -regtest").getCmd("dockerized-test-1"),
+                is(equalTo(new String[] {"daemon", "-regtest"})));
+        assertThat(config().getCmd("dockerized-test-1"), is(nullValue()));
+    }
+
+    @Test
+    public void forNodeTest() throws Exception {
+        final DaemonConfig config = config("nodes", "alice, bob", "cmd", "daemon -regtest",
+                "node.bob.cmd", "daemon -regtest -addnode=alice", "node.bob.image", "coinbub/other");
+        assertThat(config.getNodes(), is(equalTo(Arrays.asList("alice", "bob"))));
+        assertThat(config.getNetwork(), is(equalTo("dockerized-test-net")));
+
+        final DaemonConfig alice = config.forNode("alice");
+        assertThat(alice.getName(), is(equalTo("dockerized-test-alice")));
+        assertThat(alice.getNode(), is(equalTo("alice")));
+        assertThat(alice.getNetwork(), is(equalTo("dockerized-test-net")));
+        assertThat(alice.getNodes().isEmpty(), is(true));
+        assertThat(alice.getImage(), is(equalTo("coinbub/dockerized-test")));
+        assertThat(alice.getCmd(), is(equalTo(new String[] {"daemon", "-regtest"})));
+        assertThat(alice.getProperties().containsKey("node.bob.cmd"), is(false));
+
+        final DaemonConfig bob = config.forNode("bob");
+        assertThat(bob.getName(), is(equalTo("dockerized-test-bob")));
+        assertThat(bob.getImage(), is(equalTo("coinbub/other")));
+        assertThat(bob.getCmd(), is(equalTo(new String[] {"daemon", "-regtest", "-addnode=alice"})));
+    }
+
+    @Test
+    public void forNodeEventsTest() throws Exception {
+        final DaemonConfig config = config("nodes", "alice", "cmd", "daemon -blocknotify={events}/block/%s")
+                .withEvents("http://172.17.0.1:4000");
+        assertThat(config.forNode("alice").getCmd(), is(equalTo(new String[] {
+            "daemon", "-blocknotify=http://172.17.0.1:4000/dockerized-test-alice/block/%s"})));
+    }
+
+    @Test
+    public void sharedRejectsEventsTest() throws Exception {
+        assertThat(config("shared", "true", "cmd", "daemon -regtest").isShared(), is(true));
+        final RuntimeException ex = assertThrows(RuntimeException.class,
+                () -> config("shared", "true", "cmd", "daemon -blocknotify={events}/block/%s"));
+        assertThat(ex.getMessage(), is(equalTo("shared containers cannot use {events}")));
+    }
+
+    @Test
+    public void forNodeArchiveTest() throws Exception {
+        final DaemonConfig config = config("nodes", "alice", "node.alice.confArchive", "/missing.tar.gz");
+        final RuntimeException ex = assertThrows(RuntimeException.class, () -> config.forNode("alice"));
+        assertThat(ex.getMessage(), is(equalTo("Unable to load /missing.tar.gz for node alice")));
+    }
+
+    @Test
+    public void forMatrixTest() throws Exception {
+        final DaemonConfig config = config("matrix", "v16, v17", "cmd", "daemon -regtest",
+                "matrix.v17.image", "coinbub/dockerized-test:v17", "matrix.v17.pool.size", "2");
+        assertThat(config.getMatrix(), is(equalTo(Arrays.asList("v16", "v17"))));
+
+        final DaemonConfig v16 = config.forMatrix("v16");
+        assertThat(v16.getName(), is(equalTo("dockerized-test-v16")));
+        assertThat(v16.getImage(), is(equalTo("coinbub/dockerized-test")));
+        assertThat(v16.getPoolSize(), is(equalTo(1)));
+        assertThat(v16.getMatrix().isEmpty(), is(true));
+        assertThat(v16.getProperties().containsKey("matrix.v17.image"), is(false));
+
+        final DaemonConfig v17 = config.forMatrix("v17");
+        assertThat(v17.getName(), is(equalTo("dockerized-test-v17")));
+        assertThat(v17.getImage(), is(equalTo("coinbub/dockerized-test:v17")));
+        assertThat(v17.getPoolSize(), is(equalTo(2)));
+        assertThat(v17.getCmd(), is(equalTo(new String[] {"daemon", "-regtest"})));
+        assertThat(v17.getNetwork(), is(nullValue()));
+    }
+}
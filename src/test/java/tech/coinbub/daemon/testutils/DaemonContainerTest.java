@@ -0,0 +1,115 @@
+package tech.coinbub.daemon.testutils;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.dockerjava.api.DockerClient;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+public class DaemonContainerTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * A docker client whose commands chain to themselves, answering commits
+     * with a new image id and recording the images removed.
+     */
+    private static DockerClient docker(final List<String> removed) {
+        final int[] images = new int[1];
+        return (DockerClient) command(DockerClient.class, removed, images, null);
+    }
+
+    private static Object command(final Class<?> type, final List<String> removed, final int[] images,
+            final Object[] args) {
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, (proxy, method, a) -> {
+            if ("exec".equals(method.getName())) {
+                if ("removeImageCmd".equals(args == null ? null : args[0])) {
+                    removed.add((String) args[1]);
+                }
+                return method.getReturnType() == String.class ? "image" + ++images[0] : null;
+            }
+            if (method.getReturnType().isInterface()) {
+                return method.getReturnType().isInstance(proxy)
+                        ? proxy
+                        : command(method.getReturnType(), removed, images,
+                                new Object[] {method.getName(), a == null ? null : a[0]});
+            }
+            return null;
+        });
+    }
+
+    @Test
+    public void ephemeralHostConfigTest() throws Exception {
+        final DaemonConfig config = DaemonConfigTest.config("ephemeral", "true", "conf", "/root/.bitcoin",
+                "ephemeral.tmpfsSize", "64m", "ephemeral.memory", "256m", "ephemeral.cpus", "1.5");
+        final JsonNode json = MAPPER.valueToTree(DaemonContainer.ephemeralHostConfig(config));
+        assertThat(json.path("Tmpfs").path("/root/.bitcoin/regtest").asText(), is(equalTo("rw,size=64m")));
+        assertThat(json.path("Memory").asLong(), is(equalTo(256L << 20)));
+        assertThat(json.path("CpuPeriod").asInt(), is(equalTo(100000)));
+        assertThat(json.path("CpuQuota").asInt(), is(equalTo(150000)));
+    }
+
+    @Test
+    public void ephemeralSnapshotTest() throws Exception {
+        final DaemonContainer container = new DaemonContainer(
+                DaemonConfigTest.config("ephemeral", "true"), null, "ephemeral", "fingerprint");
+        final UnsupportedOperationException ex = assertThrows(UnsupportedOperationException.class,
+                () -> container.snapshot("funded"));
+        assertThat(ex.getMessage().contains("tmpfs"), is(true));
+    }
+
+    @Test
+    public void snapshotsPerPoolTest() throws Exception {
+        final List<String> removed = new ArrayList<>();
+        final DockerClient docker = docker(removed);
+        final DaemonConfig config = DaemonConfigTest.config();
+        final DaemonContainer v16 = new DaemonContainer(config, docker, "v16", "fingerprint-v16");
+        final DaemonContainer v16Pooled = new DaemonContainer(config, docker, "v16-1", "fingerprint-v16");
+        final DaemonContainer v17 = new DaemonContainer(config, docker, "v17", "fingerprint-v17");
+
+        assertThat(v16.snapshot("funded"), is(equalTo("image1")));
+        assertThat(v16Pooled.hasSnapshot("funded"), is(true));
+        assertThat(v17.hasSnapshot("funded"), is(false));
+        final IllegalStateException ex = assertThrows(IllegalStateException.class, () -> v17.restore("funded"));
+        assertThat(ex.getMessage().contains("different image or configuration (fingerprint fingerprint-v16)"),
+                is(true));
+        assertThat(assertThrows(IllegalStateException.class, () -> v17.restore("missing")).getMessage(),
+                is(equalTo("No snapshot named missing")));
+
+        assertThat(v17.snapshot("funded"), is(equalTo("image2")));
+        DaemonContainer.removeSnapshots(docker, Arrays.asList(v16, v16Pooled));
+        assertThat(removed, is(equalTo(Arrays.asList("image1"))));
+        assertThat(v16.hasSnapshot("funded"), is(false));
+        assertThat(v17.hasSnapshot("funded"), is(true));
+        DaemonContainer.removeSnapshots(docker, Arrays.asList(v17));
+        assertThat(removed, is(equalTo(Arrays.asList("image1", "image2"))));
+    }
+
+    @Test
+    public void replayStreamTest() throws Exception {
+        final List<String> calls = new ArrayList<>();
+        final DaemonContainer container = DaemonContainer.replay(DaemonConfigTest.config(), new AbstractRpcClient() {
+            @Override
+            public Object invoke(final String methodName, final Object argument, final Type returnType,
+                    final Map<String, String> extraHeaders) throws Exception {
+                calls.add(methodName + Arrays.toString((Object[]) argument));
+                return RpcTape.convert(MAPPER.readTree("[\"a\",\"b\"]"), returnType);
+            }
+        });
+        try (Stream<String> items = container.stream("listlabels", String.class, "receive")) {
+            assertThat(items.collect(Collectors.toList()), is(equalTo(Arrays.asList("a", "b"))));
+        }
+        assertThat(calls, is(equalTo(Arrays.asList("listlabels[receive]"))));
+        container.stop();
+    }
+}
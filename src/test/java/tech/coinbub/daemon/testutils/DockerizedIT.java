@@ -3,6 +3,7 @@ package tech.coinbub.daemon.testutils;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import java.util.concurrent.CompletableFuture;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import tech.coinbub.daemon.support.TestServer;
@@ -13,4 +14,19 @@ public class DockerizedIT {
     public void basicRunTest(final TestServer server) {
         assertThat(server.add(1, 2), is(equalTo(3)));
     }
+
+    @Test
+    public void batchTest(final RpcBatch<TestServer> batch) throws Exception {
+        final CompletableFuture<Integer> first = batch.call((s) -> s.add(1, 2));
+        final CompletableFuture<Integer> second = batch.call((s) -> s.add(3, 4));
+        batch.execute();
+        assertThat(first.get(), is(equalTo(3)));
+        assertThat(second.get(), is(equalTo(7)));
+    }
+
+    @MatrixTest
+    public void matrixTest(final TestServer server) {
+        // Runs on the class's lease, as the only container is already leased
+        assertThat(server.add(2, 2), is(equalTo(4)));
+    }
 }
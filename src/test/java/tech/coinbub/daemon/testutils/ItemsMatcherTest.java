@@ -0,0 +1,128 @@
+package tech.coinbub.daemon.testutils;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static tech.coinbub.daemon.testutils.ItemsMatcher.everyItemInParallel;
+import static tech.coinbub.daemon.testutils.ItemsMatcher.everyStreamedItem;
+import static tech.coinbub.daemon.testutils.ItemsMatcher.hasItemInParallel;
+import static tech.coinbub.daemon.testutils.ItemsMatcher.hasStreamedItem;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.hamcrest.CustomMatcher;
+import org.hamcrest.StringDescription;
+import org.junit.jupiter.api.Test;
+
+public class ItemsMatcherTest {
+    private static final List<Integer> NUMBERS = Collections.unmodifiableList(
+            IntStream.range(0, 10_000).boxed().collect(Collectors.toList()));
+
+    private static String mismatch(final ItemsMatcher<?> matcher, final Object actual) {
+        final StringDescription description = new StringDescription();
+        matcher.describeMismatch(actual, description);
+        return description.toString();
+    }
+
+    @Test
+    public void everyItemTest() {
+        assertThat(NUMBERS, everyItemInParallel(lessThan(10_000)));
+        assertThat(NUMBERS, everyStreamedItem(lessThan(10_000)));
+        assertThat(new HashSet<>(NUMBERS), everyItemInParallel(lessThan(10_000)));
+        assertThat(new LinkedList<>(NUMBERS), everyStreamedItem(lessThan(10_000)));
+        assertThat(NUMBERS.iterator(), everyStreamedItem(lessThan(10_000)));
+        assertThat(NUMBERS.stream(), everyItemInParallel(lessThan(10_000)));
+        assertThat(Collections.emptyList(), everyItemInParallel(lessThan(0)));
+    }
+
+    @Test
+    public void hasItemTest() {
+        assertThat(NUMBERS, hasItemInParallel(equalTo(9_999)));
+        assertThat(NUMBERS.stream(), hasStreamedItem(equalTo(5)));
+        assertThat(hasItemInParallel(equalTo(-1)).matches(NUMBERS), is(false));
+        assertThat(hasStreamedItem(equalTo(-1)).matches(new LinkedList<>(NUMBERS)), is(false));
+    }
+
+    @Test
+    public void failingIndexTest() {
+        final List<Integer> numbers = new ArrayList<>(NUMBERS);
+        numbers.set(1234, -1);
+        final ItemsMatcher<Integer> parallel = everyItemInParallel(greaterThan(-1));
+        assertThat(parallel.matches(numbers), is(false));
+        assertThat(mismatch(parallel, numbers), is(equalTo("item 1234 <-1> was equal to <-1>")));
+
+        final ItemsMatcher<Integer> streamed = everyStreamedItem(greaterThan(-1));
+        assertThat(streamed.matches(new LinkedList<>(numbers)), is(false));
+        assertThat(streamed.matches(numbers), is(false));
+        assertThat(mismatch(streamed, numbers), is(equalTo("item 1234 <-1> was equal to <-1>")));
+    }
+
+    @Test
+    public void streamedFailureTest() {
+        final Iterator<Integer> iterator = Arrays.asList(1, 2, -3, 4).iterator();
+        final ItemsMatcher<Integer> matcher = everyStreamedItem(greaterThan(0));
+        assertThat(matcher.matches(iterator), is(false));
+        assertThat(mismatch(matcher, iterator), is(equalTo("an item <-3> was less than <0>")));
+        // Stops at the first failure
+        assertThat(iterator.next(), is(equalTo(4)));
+    }
+
+    @Test
+    public void noItemMatchedTest() {
+        final ItemsMatcher<Integer> matcher = hasItemInParallel(equalTo(-1));
+        assertThat(matcher.matches(NUMBERS), is(false));
+        assertThat(mismatch(matcher, NUMBERS), is(equalTo("no item matched")));
+        assertThat(StringDescription.toString(matcher), is(equalTo("an item <-1>")));
+        assertThat(StringDescription.toString(everyItemInParallel(equalTo(1))), is(equalTo("every item <1>")));
+    }
+
+    @Test
+    public void nullItemsTest() {
+        final List<Integer> withNull = Arrays.asList(1, null, 3);
+        final ItemsMatcher<Object> matcher = everyStreamedItem(nullValue());
+        assertThat(matcher.matches(withNull.stream()), is(false));
+        assertThat(hasStreamedItem(nullValue()).matches(withNull.stream()), is(true));
+        assertThat(everyItemInParallel(nullValue()).matches(Arrays.asList(null, null)), is(true));
+        assertThat(everyStreamedItem(equalTo(1)).matches(Stream.of(1, null)), is(false));
+    }
+
+    @Test
+    public void notACollectionTest() {
+        final ItemsMatcher<Integer> matcher = everyItemInParallel(equalTo(1));
+        assertThat(matcher.matches(1), is(false));
+        assertThat(mismatch(matcher, 1), is(equalTo("was not a collection or stream")));
+        assertThat(mismatch(matcher, 2), is(equalTo("was <2>")));
+    }
+
+    @Test
+    public void closesStreamTest() {
+        final AtomicBoolean closed = new AtomicBoolean();
+        assertThat(Stream.of(1, 2).onClose(() -> closed.set(true)), everyStreamedItem(greaterThan(0)));
+        assertThat(closed.get(), is(true));
+    }
+
+    @Test
+    public void parallelTest() {
+        final AtomicInteger calls = new AtomicInteger();
+        assertThat(NUMBERS, everyItemInParallel(new CustomMatcher<Integer>("counted") {
+            @Override
+            public boolean matches(final Object item) {
+                calls.incrementAndGet();
+                return true;
+            }
+        }));
+        assertThat(calls.get(), is(equalTo(NUMBERS.size())));
+    }
+}
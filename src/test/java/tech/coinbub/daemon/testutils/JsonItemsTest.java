@@ -0,0 +1,108 @@
+package tech.coinbub.daemon.testutils;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import com.googlecode.jsonrpc4j.JsonRpcClientException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+public class JsonItemsTest {
+    public static class Item {
+        public String txid;
+        public int n;
+    }
+
+    /**
+     * Counts the bytes read and whether it was closed.
+     */
+    private static final class TrackingStream extends ByteArrayInputStream {
+        private int read = 0;
+        private boolean closed = false;
+
+        TrackingStream(final String json) {
+            super(json.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public synchronized int read(final byte[] b, final int off, final int len) {
+            final int n = super.read(b, off, len);
+            read += Math.max(n, 0);
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            super.close();
+        }
+    }
+
+    private static InputStream json(final String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void streamResultTest() throws IOException {
+        final TrackingStream in = new TrackingStream(
+                "{\"id\":1,\"error\":null,\"result\":[{\"txid\":\"a\",\"n\":0},{\"txid\":\"b\",\"n\":1}]}");
+        try (Stream<Item> items = JsonItems.streamResult(in, Item.class)) {
+            final List<String> txids = items.map((i) -> i.txid + i.n).collect(Collectors.toList());
+            assertThat(txids, is(equalTo(Arrays.asList("a0", "b1"))));
+        }
+        assertThat(in.closed, is(true));
+    }
+
+    @Test
+    public void nullElementsTest() throws IOException {
+        try (Stream<Integer> items = JsonItems.streamResult(json("{\"result\":[1,null,3]}"), Integer.class)) {
+            assertThat(items.collect(Collectors.toList()), is(equalTo(Arrays.asList(1, null, 3))));
+        }
+    }
+
+    @Test
+    public void emptyResultTest() throws IOException {
+        try (Stream<Integer> items = JsonItems.streamResult(json("{\"result\":[]}"), Integer.class)) {
+            assertThat(items.count(), is(equalTo(0L)));
+        }
+    }
+
+    @Test
+    public void lazyTest() throws IOException {
+        final StringBuilder json = new StringBuilder("{\"result\":[");
+        for (int i = 0; i < 100_000; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"txid\":\"").append(i).append("\",\"n\":").append(i).append('}');
+        }
+        final TrackingStream in = new TrackingStream(json.append("]}").toString());
+        try (Stream<Item> items = JsonItems.streamResult(in, Item.class)) {
+            final Iterator<Item> iterator = items.iterator();
+            assertThat(iterator.next().n, is(equalTo(0)));
+            assertThat(in.read, is(lessThan(json.length() / 10)));
+        }
+    }
+
+    @Test
+    public void errorTest() {
+        final JsonRpcClientException ex = assertThrows(JsonRpcClientException.class, () -> JsonItems.streamResult(
+                json("{\"result\":null,\"error\":{\"code\":-5,\"message\":\"Invalid address\"}}"), Item.class));
+        assertThat(ex.getCode(), is(equalTo(-5)));
+        assertThat(ex.getMessage(), is(equalTo("Invalid address")));
+    }
+
+    @Test
+    public void malformedTest() {
+        assertThrows(IOException.class, () -> JsonItems.streamResult(json("[1,2]"), Integer.class));
+        assertThrows(IOException.class, () -> JsonItems.streamResult(json("{\"result\":5}"), Integer.class));
+        assertThrows(IOException.class, () -> JsonItems.streamResult(json("{\"result\":null}"), Integer.class));
+    }
+}
@@ -0,0 +1,99 @@
+package tech.coinbub.daemon.testutils;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+public class LatencyHistogramTest {
+    private static final long MILLI = 1_000_000L;
+
+    @Test
+    public void emptyTest() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertThat(histogram.getCount(), is(equalTo(0L)));
+        assertThat(histogram.getMeanMillis(), is(equalTo(0.0)));
+        assertThat(histogram.getPercentileMillis(99), is(equalTo(0.0)));
+        assertThat(histogram.getMax(TimeUnit.MILLISECONDS), is(equalTo(0L)));
+    }
+
+    @Test
+    public void summaryTest() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1 * MILLI);
+        histogram.record(2 * MILLI);
+        histogram.record(6 * MILLI);
+        assertThat(histogram.getCount(), is(equalTo(3L)));
+        assertThat(histogram.getMeanMillis(), is(closeTo(3.0, 1e-9)));
+        assertThat(histogram.getMax(TimeUnit.MICROSECONDS), is(equalTo(6000L)));
+    }
+
+    @Test
+    public void percentileErrorTest() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10_000; i++) {
+            histogram.record(i * 1000L);
+        }
+        for (double percentile : new double[] {1, 10, 50, 90, 99, 99.9}) {
+            final double exact = percentile * 100 / 1000.0;
+            final double reported = histogram.getPercentileMillis(percentile);
+            assertThat(reported, is(greaterThanOrEqualTo(exact)));
+            assertThat(reported, is(lessThanOrEqualTo(exact * 1.0625 + 0.001)));
+        }
+        assertThat(histogram.getPercentileMillis(100), is(equalTo(10.0)));
+    }
+
+    @Test
+    public void smallValuesAreExactTest() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 16; i++) {
+            histogram.record(i * 1000L);
+        }
+        assertThat(histogram.getPercentileMillis(50), is(equalTo(0.008)));
+    }
+
+    @Test
+    public void percentileNeverExceedsMaxTest() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1_000_500L);
+        assertThat(histogram.getPercentileMillis(50), is(equalTo(1.0005)));
+    }
+
+    @Test
+    public void extremeValuesTest() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(0);
+        histogram.record(Long.MAX_VALUE);
+        assertThat(histogram.getCount(), is(equalTo(3L)));
+        assertThat(histogram.getMax(TimeUnit.NANOSECONDS), is(equalTo(Long.MAX_VALUE)));
+        assertThat(histogram.getPercentileMillis(100), is(lessThanOrEqualTo(Long.MAX_VALUE / 1e6)));
+    }
+
+    @Test
+    public void concurrentRecordTest() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final long value = (t + 1) * MILLI;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    histogram.record(value);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(histogram.getCount(), is(equalTo(40_000L)));
+        assertThat(histogram.getMeanMillis(), is(closeTo(2.5, 1e-9)));
+        assertThat(histogram.getMax(TimeUnit.MILLISECONDS), is(equalTo(4L)));
+    }
+}
@@ -0,0 +1,139 @@
+package tech.coinbub.daemon.testutils;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import com.googlecode.jsonrpc4j.JsonRpcClientException;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import tech.coinbub.daemon.support.TestServer;
+
+public class LoadDriverTest {
+    /**
+     * Adds after an optional delay, counting its calls.
+     */
+    private static final class Server implements TestServer {
+        private final long delayMillis;
+        private final AtomicInteger calls = new AtomicInteger();
+
+        Server(final long delayMillis) {
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public int add(final int a, final int b) {
+            calls.incrementAndGet();
+            if (delayMillis > 0) {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return a + b;
+        }
+    }
+
+    @Test
+    public void rateSchedulingTest() throws Exception {
+        final Server server = new Server(0);
+        // Each 5ms slot before the deadline is taken by exactly one caller
+        final LoadDriver.LoadReport report = LoadDriver.<TestServer>of(server)
+                .concurrency(4)
+                .rate(200)
+                .duration(500, TimeUnit.MILLISECONDS)
+                .run((c) -> c.add(1, 2));
+        assertThat(report.getCalls(), is(equalTo(100L)));
+        assertThat(server.calls.get(), is(equalTo(100)));
+        assertThat(report.getErrors(), is(equalTo(0L)));
+        assertThat(report.getLatency().getCount(), is(equalTo(100L)));
+    }
+
+    @Test
+    public void warmupTest() throws Exception {
+        final Server server = new Server(0);
+        final LoadDriver.LoadReport report = LoadDriver.<TestServer>of(server)
+                .concurrency(2)
+                .rate(200)
+                .warmup(250, TimeUnit.MILLISECONDS)
+                .duration(250, TimeUnit.MILLISECONDS)
+                .run((c) -> c.add(1, 2));
+        assertThat(server.calls.get(), is(equalTo(100)));
+        assertThat(report.getCalls(), is(equalTo(50L)));
+        assertThat(report.getLatency().getCount(), is(equalTo(50L)));
+    }
+
+    @Test
+    public void latencyFromScheduledStartTest() throws Exception {
+        // A single caller needs 20ms per call but is scheduled every 10ms, so it falls behind
+        final LoadDriver.LoadReport report = LoadDriver.<TestServer>of(new Server(20))
+                .concurrency(1)
+                .rate(100)
+                .duration(200, TimeUnit.MILLISECONDS)
+                .run((c) -> c.add(1, 2));
+        assertThat(report.getCalls(), is(equalTo(20L)));
+        assertThat(report.getLatency().getMax(TimeUnit.MILLISECONDS), is(greaterThanOrEqualTo(150L)));
+    }
+
+    @Test
+    public void errorBucketsTest() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        final TestServer server = (a, b) -> {
+            switch (calls.getAndIncrement() % 4) {
+                case 0:
+                    throw new JsonRpcClientException(-5, "Invalid address", null);
+                case 1:
+                    throw new UndeclaredThrowableException(new IOException("connection reset"));
+                default:
+                    return a + b;
+            }
+        };
+        final LoadDriver.LoadReport report = LoadDriver.of(server)
+                .concurrency(3)
+                .rate(1000)
+                .duration(100, TimeUnit.MILLISECONDS)
+                .run((c) -> c.add(1, 2));
+        final Map<String, Long> expected = new HashMap<>();
+        expected.put("JsonRpcClientException(-5)", 25L);
+        expected.put("IOException", 25L);
+        assertThat(report.getCalls(), is(equalTo(100L)));
+        assertThat(report.getErrors(), is(equalTo(50L)));
+        assertThat(report.getErrorsByType(), is(equalTo(expected)));
+    }
+
+    @Test
+    public void perMethodLatencyTest() throws Exception {
+        final DaemonContainer container = DaemonContainer.replay(DaemonConfigTest.config(), new AbstractRpcClient() {
+            @Override
+            public Object invoke(final String methodName, final Object argument, final Type returnType,
+                    final Map<String, String> extraHeaders) {
+                return 3;
+            }
+        });
+        final DockerizedMetrics.MethodTiming before = DockerizedMetrics.getMethods().get("add");
+        final long previous = before == null ? 0 : before.getLatency().getCount();
+        final LoadDriver.LoadReport report = LoadDriver.of((TestServer) container.getClient())
+                .concurrency(2)
+                .rate(500)
+                .duration(100, TimeUnit.MILLISECONDS)
+                .run((c) -> c.add(1, 2));
+        // Calls made through a resolved client are timed per method as well
+        assertThat(report.getCalls(), is(equalTo(50L)));
+        assertThat(DockerizedMetrics.getMethods().get("add").getLatency().getCount(),
+                is(equalTo(previous + 50)));
+        container.stop();
+    }
+
+    @Test
+    public void concurrencyTest() {
+        assertThrows(IllegalArgumentException.class, () -> LoadDriver.of(new Server(0)).concurrency(0));
+    }
+}
@@ -0,0 +1,238 @@
+package tech.coinbub.daemon.testutils;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class PooledTransportTest {
+    private enum Action {
+        RESPOND, RESPOND_AND_CLOSE, PARTIAL, DROP, HANG
+    }
+
+    private interface Script {
+        Action next(int connection, int request);
+    }
+
+    /**
+     * A bare HTTP/1.1 server on loopback that echoes request bodies, doing
+     * whatever the script says for each request.
+     */
+    private static final class FakeDaemon implements Closeable {
+        private final ServerSocket server;
+        private final Script script;
+        private final AtomicInteger connections = new AtomicInteger();
+        private final AtomicInteger requests = new AtomicInteger();
+        private final List<Socket> sockets = new CopyOnWriteArrayList<>();
+
+        FakeDaemon(final Script script) throws IOException {
+            this.server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            this.script = script;
+            start(this::accept);
+        }
+
+        URL url() throws IOException {
+            return new URL("http", server.getInetAddress().getHostAddress(), server.getLocalPort(), "/");
+        }
+
+        private static void start(final Runnable task) {
+            final Thread thread = new Thread(task);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void accept() {
+            try {
+                while (true) {
+                    final Socket socket = server.accept();
+                    sockets.add(socket);
+                    final int connection = connections.getAndIncrement();
+                    start(() -> serve(socket, connection));
+                }
+            } catch (IOException ex) {
+                // Closed
+            }
+        }
+
+        private void serve(final Socket socket, final int connection) {
+            try (Socket s = socket) {
+                final InputStream in = s.getInputStream();
+                final OutputStream out = s.getOutputStream();
+                for (int request = 0; ; request++) {
+                    final byte[] body = readRequest(in);
+                    if (body == null) {
+                        return;
+                    }
+                    requests.incrementAndGet();
+                    switch (script.next(connection, request)) {
+                        case RESPOND:
+                            respond(out, body);
+                            break;
+                        case RESPOND_AND_CLOSE:
+                            respond(out, body);
+                            return;
+                        case PARTIAL:
+                            out.write("HTTP/1.1 200 OK\r\n".getBytes(StandardCharsets.US_ASCII));
+                            out.flush();
+                            return;
+                        case DROP:
+                            return;
+                        default:
+                            // Hang until the client gives up
+                    }
+                }
+            } catch (IOException ex) {
+                // Client went away
+            }
+        }
+
+        private static byte[] readRequest(final InputStream in) throws IOException {
+            int length = 0;
+            String line = readLine(in);
+            if (line == null) {
+                return null;
+            }
+            while (!(line = readLine(in)).isEmpty()) {
+                if (line.toLowerCase().startsWith("content-length:")) {
+                    length = Integer.parseInt(line.substring(15).trim());
+                }
+            }
+            final byte[] body = new byte[length];
+            for (int read = 0; read < length; ) {
+                final int n = in.read(body, read, length - read);
+                if (n == -1) {
+                    throw new EOFException();
+                }
+                read += n;
+            }
+            return body;
+        }
+
+        private static String readLine(final InputStream in) throws IOException {
+            final StringBuilder line = new StringBuilder();
+            int c;
+            while ((c = in.read()) != '\n') {
+                if (c == -1) {
+                    return line.length() == 0 ? null : line.toString();
+                }
+                if (c != '\r') {
+                    line.append((char) c);
+                }
+            }
+            return line.toString();
+        }
+
+        private static void respond(final OutputStream out, final byte[] body) throws IOException {
+            out.write(("HTTP/1.1 200 OK\r\n"
+                    + "Content-Type: application/json\r\n"
+                    + "Content-Length: " + body.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.write(body);
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            server.close();
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+    }
+
+    private FakeDaemon daemon;
+    private PooledTransport transport;
+
+    private PooledTransport transport(final Script script) throws Exception {
+        daemon = new FakeDaemon(script);
+        transport = new PooledTransport(daemon.url(), DaemonConfigTest.config("transport.timeout", "500"));
+        return transport;
+    }
+
+    private static String send(final PooledTransport transport, final String body) throws IOException {
+        try (InputStream in = transport.send((out) -> out.write(body.getBytes(StandardCharsets.UTF_8)))) {
+            final ByteArrayOutputStream read = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[256];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                read.write(buffer, 0, n);
+            }
+            return new String(read.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @AfterEach
+    public void close() throws IOException {
+        if (transport != null) {
+            transport.close();
+        }
+        if (daemon != null) {
+            daemon.close();
+        }
+    }
+
+    @Test
+    public void keepAliveTest() throws Exception {
+        final PooledTransport transport = transport((c, r) -> Action.RESPOND);
+        assertThat(send(transport, "{\"id\":1}"), is(equalTo("{\"id\":1}")));
+        assertThat(send(transport, "{\"id\":2}"), is(equalTo("{\"id\":2}")));
+        assertThat(send(transport, "{\"id\":3}"), is(equalTo("{\"id\":3}")));
+        assertThat(daemon.connections.get(), is(equalTo(1)));
+        assertThat(daemon.requests.get(), is(equalTo(3)));
+    }
+
+    @Test
+    public void staleConnectionRetriedTest() throws Exception {
+        final PooledTransport transport = transport((c, r) -> c == 0 ? Action.RESPOND_AND_CLOSE : Action.RESPOND);
+        assertThat(send(transport, "{\"id\":1}"), is(equalTo("{\"id\":1}")));
+        assertThat(send(transport, "{\"id\":2}"), is(equalTo("{\"id\":2}")));
+        assertThat(daemon.connections.get(), is(equalTo(2)));
+        assertThat(daemon.requests.get(), is(equalTo(2)));
+    }
+
+    @Test
+    public void freshConnectionNotRetriedTest() throws Exception {
+        final PooledTransport transport = transport((c, r) -> Action.DROP);
+        final IOException ex = assertThrows(IOException.class, () -> send(transport, "{\"id\":1}"));
+        assertThat(ex, is(instanceOf(EOFException.class)));
+        assertThat(daemon.connections.get(), is(equalTo(1)));
+        assertThat(daemon.requests.get(), is(equalTo(1)));
+    }
+
+    @Test
+    public void timeoutNotRetriedTest() throws Exception {
+        final PooledTransport transport = transport((c, r) -> r == 0 ? Action.RESPOND : Action.HANG);
+        assertThat(send(transport, "{\"id\":1}"), is(equalTo("{\"id\":1}")));
+        assertThrows(SocketTimeoutException.class, () -> send(transport, "{\"id\":2}"));
+        assertThat(daemon.connections.get(), is(equalTo(1)));
+        assertThat(daemon.requests.get(), is(equalTo(2)));
+    }
+
+    @Test
+    public void partialResponseNotRetriedTest() throws Exception {
+        final PooledTransport transport = transport((c, r) -> r == 0 ? Action.RESPOND : Action.PARTIAL);
+        assertThat(send(transport, "{\"id\":1}"), is(equalTo("{\"id\":1}")));
+        final IOException ex = assertThrows(IOException.class, () -> send(transport, "{\"id\":2}"));
+        assertThat(ex, is(not(instanceOf(SocketTimeoutException.class))));
+        assertThat(daemon.connections.get(), is(equalTo(1)));
+        assertThat(daemon.requests.get(), is(equalTo(2)));
+    }
+}
@@ -0,0 +1,101 @@
+package tech.coinbub.daemon.testutils;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import com.fasterxml.jackson.databind.node.IntNode;
+import com.googlecode.jsonrpc4j.JsonRpcClientException;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Properties;
+import org.junit.jupiter.api.Test;
+
+public class ReadinessProbeTest {
+    /**
+     * Answers each call with the next scripted outcome, repeating the last.
+     */
+    private static final class ScriptedClient extends AbstractRpcClient {
+        private final Deque<Object> outcomes;
+        private int calls = 0;
+
+        ScriptedClient(final Object... outcomes) {
+            this.outcomes = new ArrayDeque<>(Arrays.asList(outcomes));
+        }
+
+        @Override
+        public Object invoke(final String methodName, final Object argument, final Type returnType,
+                final Map<String, String> extraHeaders) throws Throwable {
+            calls++;
+            final Object outcome = outcomes.size() > 1 ? outcomes.poll() : outcomes.peek();
+            if (outcome instanceof Throwable) {
+                throw (Throwable) outcome;
+            }
+            return outcome;
+        }
+    }
+
+    private static JsonRpcClientException error(final int code) {
+        return new JsonRpcClientException(code, "error " + code, null);
+    }
+
+    private static ReadinessProbe probe(final ScriptedClient client, final String... pairs) throws IOException {
+        final Properties props = new Properties();
+        props.setProperty("ready.timeout", "2000");
+        for (int i = 0; i < pairs.length; i += 2) {
+            props.setProperty(pairs[i], pairs[i + 1]);
+        }
+        return ReadinessProbe.fromProperties(props, client);
+    }
+
+    @Test
+    public void methodNotFoundIsReadyTest() throws Exception {
+        final ScriptedClient client = new ScriptedClient(error(-32601));
+        probe(client).await();
+        assertThat(client.calls, is(equalTo(1)));
+    }
+
+    @Test
+    public void warmupIsNotReadyTest() throws Exception {
+        final ScriptedClient client = new ScriptedClient(new IOException("refused"), error(-28), error(-28),
+                error(-32602));
+        probe(client).await();
+        assertThat(client.calls, is(equalTo(4)));
+    }
+
+    @Test
+    public void configuredWarmupCodesTest() throws Exception {
+        final ScriptedClient client = new ScriptedClient(error(-32601), error(-32601), error(-32602));
+        probe(client, "ready.warmupCodes", "-28, -32601").await();
+        assertThat(client.calls, is(equalTo(3)));
+    }
+
+    @Test
+    public void otherErrorsAreNotReadyTest() throws Exception {
+        final ScriptedClient client = new ScriptedClient(error(-1));
+        final RuntimeException ex = assertThrows(RuntimeException.class,
+                () -> probe(client, "ready.timeout", "200").await());
+        assertThat(ex.getCause(), is(instanceOf(JsonRpcClientException.class)));
+    }
+
+    @Test
+    public void errorsPropagateTest() throws Exception {
+        final AssertionError error = new AssertionError("broken stub");
+        final ScriptedClient client = new ScriptedClient(new IOException("refused"), error);
+        assertThat(assertThrows(AssertionError.class, () -> probe(client).await()), is(sameInstance(error)));
+        assertThat(client.calls, is(equalTo(2)));
+    }
+
+    @Test
+    public void expectedResultTest() throws Exception {
+        final ScriptedClient client = new ScriptedClient(error(-28), IntNode.valueOf(2), IntNode.valueOf(3));
+        probe(client, "ready.method", "add", "ready.params", "[1, 2]", "ready.result", "3").await();
+        assertThat(client.calls, is(equalTo(3)));
+    }
+}
@@ -0,0 +1,126 @@
+package tech.coinbub.daemon.testutils;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.dockerjava.api.model.Statistics;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ResourceSamplerTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private Path report;
+
+    @BeforeEach
+    public void createReport() throws IOException {
+        report = Files.createTempFile("dockerized-resources", ".json");
+    }
+
+    @AfterEach
+    public void deleteReport() throws IOException {
+        Files.deleteIfExists(report);
+    }
+
+    private static DaemonContainer container(final String name) throws Exception {
+        return new DaemonContainer(DaemonConfigTest.config(), null, name, null);
+    }
+
+    private static Statistics stats(final long cpu, final long memory, final long read, final long write,
+            final long rx, final long tx) throws IOException {
+        return MAPPER.readValue("{"
+                + "\"cpu_stats\": {\"cpu_usage\": {\"total_usage\": " + cpu + "}},"
+                + "\"memory_stats\": {\"usage\": " + memory + "},"
+                + "\"blkio_stats\": {\"io_service_bytes_recursive\": ["
+                + "{\"major\": 8, \"minor\": 0, \"op\": \"Read\", \"value\": " + read + "},"
+                + "{\"major\": 8, \"minor\": 0, \"op\": \"Write\", \"value\": " + write + "},"
+                + "{\"major\": 8, \"minor\": 0, \"op\": \"Total\", \"value\": " + (read + write) + "}]},"
+                + "\"networks\": {"
+                + "\"eth0\": {\"rx_bytes\": " + rx + ", \"tx_bytes\": " + tx + "},"
+                + "\"eth1\": {\"rx_bytes\": 1, \"tx_bytes\": 1}}"
+                + "}", Statistics.class);
+    }
+
+    private JsonNode write(final ResourceSampler sampler) throws IOException {
+        sampler.write(report);
+        return MAPPER.readTree(report.toFile());
+    }
+
+    @Test
+    public void countersTest() throws Exception {
+        final ResourceSampler sampler = new ResourceSampler(null, Collections.singletonList("a"));
+        sampler.accept("a", stats(1_000_000_000L, 100, 10, 20, 30, 40));
+        sampler.begin("Test");
+        sampler.attach("Test", Collections.singletonList(container("a")));
+        sampler.accept("a", stats(3_000_000_000L, 300, 15, 40, 60, 90));
+        sampler.accept("a", stats(3_500_000_000L, 200, 15, 40, 60, 90));
+        sampler.end("Test");
+
+        final JsonNode summary = write(sampler).path("Test");
+        assertThat(summary.path("containers").toString(), is(equalTo("[\"a\"]")));
+        assertThat(summary.path("samples").asLong(), is(equalTo(2L)));
+        assertThat(summary.path("cpuSeconds").asDouble(), is(equalTo(2.5)));
+        assertThat(summary.path("memoryPeakBytes").asLong(), is(equalTo(300L)));
+        assertThat(summary.path("blockReadBytes").asLong(), is(equalTo(5L)));
+        assertThat(summary.path("blockWriteBytes").asLong(), is(equalTo(20L)));
+        assertThat(summary.path("networkRxBytes").asLong(), is(equalTo(30L)));
+        assertThat(summary.path("networkTxBytes").asLong(), is(equalTo(50L)));
+    }
+
+    @Test
+    public void recreatedContainerTest() throws Exception {
+        final ResourceSampler sampler = new ResourceSampler(null, Collections.singletonList("a"));
+        sampler.begin("Test");
+        sampler.attach("Test", Collections.singletonList(container("a")));
+        sampler.accept("a", stats(5_000_000_000L, 100, 0, 0, 0, 0));
+        sampler.accept("a", stats(1_000_000_000L, 100, 0, 0, 0, 0));
+        sampler.end("Test");
+
+        assertThat(write(sampler).path("Test").path("cpuSeconds").asDouble(), is(equalTo(6.0)));
+    }
+
+    @Test
+    public void perContainerTest() throws Exception {
+        final ResourceSampler sampler = new ResourceSampler(null, Arrays.asList("a", "b"));
+        sampler.begin("First");
+        sampler.begin("Second");
+        sampler.attach("First", Collections.singletonList(container("a")));
+        sampler.attach("Second", Arrays.asList(container("b"), container("external")));
+        sampler.accept("a", stats(2_000_000_000L, 100, 0, 0, 0, 0));
+        sampler.accept("b", stats(1_000_000_000L, 700, 0, 0, 0, 0));
+        sampler.accept("b", stats(4_000_000_000L, 500, 0, 0, 0, 0));
+        sampler.end("First");
+        sampler.end("Second");
+
+        final JsonNode written = write(sampler);
+        assertThat(written.path("First").path("containers").toString(), is(equalTo("[\"a\"]")));
+        assertThat(written.path("First").path("samples").asLong(), is(equalTo(1L)));
+        assertThat(written.path("First").path("cpuSeconds").asDouble(), is(equalTo(2.0)));
+        assertThat(written.path("First").path("memoryPeakBytes").asLong(), is(equalTo(100L)));
+        assertThat(written.path("Second").path("containers").toString(), is(equalTo("[\"b\"]")));
+        assertThat(written.path("Second").path("samples").asLong(), is(equalTo(2L)));
+        assertThat(written.path("Second").path("cpuSeconds").asDouble(), is(equalTo(4.0)));
+        assertThat(written.path("Second").path("memoryPeakBytes").asLong(), is(equalTo(700L)));
+    }
+
+    @Test
+    public void combinedMemoryTest() throws Exception {
+        final ResourceSampler sampler = new ResourceSampler(null, Arrays.asList("a", "b"));
+        sampler.begin("Test");
+        sampler.attach("Test", Arrays.asList(container("a"), container("b")));
+        sampler.accept("a", stats(0, 100, 0, 0, 0, 0));
+        sampler.accept("b", stats(0, 250, 0, 0, 0, 0));
+        sampler.accept("a", stats(0, 50, 0, 0, 0, 0));
+        sampler.end("Test");
+
+        assertThat(write(sampler).path("Test").path("memoryPeakBytes").asLong(), is(equalTo(350L)));
+    }
+}
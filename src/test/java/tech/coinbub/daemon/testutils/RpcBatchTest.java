@@ -0,0 +1,192 @@
+package tech.coinbub.daemon.testutils;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.googlecode.jsonrpc4j.JsonRpcClientException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import org.junit.jupiter.api.Test;
+import tech.coinbub.daemon.support.TestServer;
+
+public class RpcBatchTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * Answers every request with a canned response and keeps the last request.
+     */
+    private static final class CannedTransport implements RpcTransport {
+        private final String response;
+        private JsonNode request;
+        private int requests = 0;
+
+        CannedTransport(final String response) {
+            this.response = response;
+        }
+
+        @Override
+        public InputStream send(final RequestBody body) throws IOException {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            body.writeTo(out);
+            request = MAPPER.readTree(out.toByteArray());
+            requests++;
+            if (response == null) {
+                throw new IOException("connection refused");
+            }
+            return new ByteArrayInputStream(response.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static long calls(final String method) {
+        final DockerizedMetrics.MethodTiming timing = DockerizedMetrics.getMethods().get(method);
+        return timing == null ? 0 : timing.getLatency().getCount();
+    }
+
+    private static long errors(final String method) {
+        final DockerizedMetrics.MethodTiming timing = DockerizedMetrics.getMethods().get(method);
+        return timing == null ? 0 : timing.getErrors();
+    }
+
+    private static Throwable failure(final CompletableFuture<?> future) {
+        return assertThrows(ExecutionException.class, future::get).getCause();
+    }
+
+    @Test
+    public void executeTest() throws Exception {
+        final CannedTransport transport = new CannedTransport("["
+                + "{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":7},"
+                + "{\"jsonrpc\":\"2.0\",\"id\":0,\"result\":3},"
+                + "{\"jsonrpc\":\"2.0\",\"id\":2,\"error\":{\"code\":-8,\"message\":\"bad\"}}]");
+        final RpcBatch<TestServer> batch = new RpcBatch<>(TestServer.class, transport);
+        final CompletableFuture<Integer> first = batch.call((s) -> s.add(1, 2));
+        final CompletableFuture<Integer> second = batch.call((s) -> s.add(3, 4));
+        final CompletableFuture<Integer> third = batch.call((s) -> s.add(5, 6));
+        assertThat(batch.size(), is(equalTo(3)));
+        final long batches = calls("batch");
+        batch.execute();
+
+        assertThat(transport.requests, is(equalTo(1)));
+        assertThat(calls("batch"), is(equalTo(batches + 1)));
+        assertThat(transport.request.size(), is(equalTo(3)));
+        for (int i = 0; i < 3; i++) {
+            assertThat(transport.request.get(i).path("id").asInt(), is(equalTo(i)));
+            assertThat(transport.request.get(i).path("method").asText(), is(equalTo("add")));
+        }
+        assertThat(first.get(), is(equalTo(3)));
+        assertThat(second.get(), is(equalTo(7)));
+        final Throwable error = failure(third);
+        assertThat(error, is(instanceOf(JsonRpcClientException.class)));
+        assertThat(((JsonRpcClientException) error).getCode(), is(equalTo(-8)));
+        assertThat(batch.size(), is(equalTo(0)));
+    }
+
+    @Test
+    public void emptyBatchTest() throws Exception {
+        final CannedTransport transport = new CannedTransport("[]");
+        new RpcBatch<>(TestServer.class, transport).execute();
+        assertThat(transport.requests, is(equalTo(0)));
+    }
+
+    @Test
+    public void nullResultTest() throws Exception {
+        final RpcBatch<TestServer> batch = new RpcBatch<>(TestServer.class,
+                new CannedTransport("[{\"id\":0,\"result\":null}]"));
+        final CompletableFuture<Integer> result = batch.call((s) -> s.add(1, 2));
+        batch.execute();
+        assertThat(result.get(), is(nullValue()));
+    }
+
+    @Test
+    public void missingResponseTest() throws Exception {
+        final RpcBatch<TestServer> batch = new RpcBatch<>(TestServer.class,
+                new CannedTransport("[{\"id\":0,\"result\":3},{\"id\":9,\"result\":4}]"));
+        final CompletableFuture<Integer> answered = batch.call((s) -> s.add(1, 2));
+        final CompletableFuture<Integer> unanswered = batch.call((s) -> s.add(3, 4));
+        batch.execute();
+        assertThat(answered.get(), is(equalTo(3)));
+        assertThat(failure(unanswered).getMessage(), is(equalTo("No response for add")));
+    }
+
+    @Test
+    public void notAnArrayTest() {
+        final RpcBatch<TestServer> batch = new RpcBatch<>(TestServer.class,
+                new CannedTransport("{\"id\":null,\"error\":{\"code\":-32700}}"));
+        final CompletableFuture<Integer> result = batch.call((s) -> s.add(1, 2));
+        assertThrows(IOException.class, batch::execute);
+        assertThat(failure(result), is(instanceOf(IOException.class)));
+    }
+
+    @Test
+    public void transportFailureTest() {
+        final RpcBatch<TestServer> batch = new RpcBatch<>(TestServer.class, new CannedTransport(null));
+        final CompletableFuture<Integer> result = batch.call((s) -> s.add(1, 2));
+        final IOException ex = assertThrows(IOException.class, batch::execute);
+        assertThat(failure(result), is(ex));
+    }
+
+    @Test
+    public void oneCallPerLambdaTest() throws Exception {
+        final RpcBatch<TestServer> batch = new RpcBatch<>(TestServer.class,
+                new CannedTransport("[{\"id\":0,\"result\":3}]"));
+        final IllegalStateException ex = assertThrows(IllegalStateException.class,
+                () -> batch.call((s) -> s.add(s.add(1, 2), 3)));
+        assertThat(ex.getMessage(), is(equalTo(
+                "Each batched call must make exactly one RPC call, but add was followed by add")));
+        assertThat(assertThrows(IllegalStateException.class, () -> batch.call((s) -> 0)).getMessage(),
+                is(equalTo("No RPC call was made on the client")));
+        // Neither failure leaves a call behind
+        final CompletableFuture<Integer> result = batch.call((s) -> s.add(1, 2));
+        assertThat(batch.size(), is(equalTo(1)));
+        batch.execute();
+        assertThat(result.get(), is(equalTo(3)));
+    }
+
+    @Test
+    public void replayTest() throws Exception {
+        final List<String> calls = new ArrayList<>();
+        final DaemonContainer container = DaemonContainer.replay(DaemonConfigTest.config(), new AbstractRpcClient() {
+            @Override
+            public Object invoke(final String methodName, final Object argument, final Type returnType,
+                    final Map<String, String> extraHeaders) throws IOException {
+                final Object[] params = (Object[]) argument;
+                calls.add(methodName + Arrays.toString(params));
+                if ((int) params[0] < 0) {
+                    throw new JsonRpcClientException(-8, "negative", null);
+                }
+                return RpcTape.convert(MAPPER.valueToTree((int) params[0] + (int) params[1]), returnType);
+            }
+        });
+        final long timed = calls("add");
+        final long errors = errors("add");
+        final RpcBatch<TestServer> batch = container.batch(TestServer.class);
+        final CompletableFuture<Integer> first = batch.call((s) -> s.add(1, 2));
+        final CompletableFuture<Integer> second = batch.call((s) -> s.add(-1, 2));
+        batch.execute();
+        assertThat(first.get(), is(equalTo(3)));
+        assertThat(failure(second), is(instanceOf(JsonRpcClientException.class)));
+        assertThat(calls, is(equalTo(Arrays.asList("add[1, 2]", "add[-1, 2]"))));
+        // Timed per method by the decorated chain
+        assertThat(calls("add"), is(equalTo(timed + 2)));
+        assertThat(errors("add"), is(equalTo(errors + 1)));
+        container.stop();
+    }
+}
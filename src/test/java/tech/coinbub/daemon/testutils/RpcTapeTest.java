@@ -0,0 +1,138 @@
+package tech.coinbub.daemon.testutils;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import com.googlecode.jsonrpc4j.JsonRpcClientException;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class RpcTapeTest {
+    private Path file;
+
+    /**
+     * A daemon whose block count grows by one on every call, and which
+     * rejects negative heights.
+     */
+    private static final class FakeDaemon extends AbstractRpcClient {
+        private final AtomicInteger height = new AtomicInteger();
+
+        @Override
+        public Object invoke(final String methodName, final Object argument, final Type returnType,
+                final Map<String, String> extraHeaders) throws Throwable {
+            final Object[] params = (Object[]) argument;
+            switch (methodName) {
+            case "getblockcount":
+                return RpcTape.convert(RpcTape.MAPPER.valueToTree(height.incrementAndGet()), returnType);
+            case "getblockhash":
+                if ((Integer) params[0] < 0) {
+                    throw new JsonRpcClientException(-8, "Block height out of range", null);
+                }
+                return RpcTape.convert(RpcTape.MAPPER.valueToTree("hash" + params[0]), returnType);
+            default:
+                throw new JsonRpcClientException(-32601, "Method not found", null);
+            }
+        }
+    }
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        file = Files.createTempFile("dockerized", ".tape");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    private RpcTape record(final RecordingScript script) throws Throwable {
+        final RpcTape.Recording recording = new RpcTape.Recording();
+        script.run(new RecordingRpcClient(new FakeDaemon(), recording));
+        recording.write(file);
+        return RpcTape.open(file);
+    }
+
+    @FunctionalInterface
+    private interface RecordingScript {
+        void run(AbstractRpcClient client) throws Throwable;
+    }
+
+    @Test
+    public void repeatedRequestsTest() throws Throwable {
+        try (RpcTape tape = record((c) -> {
+            for (int i = 0; i < 4; i++) {
+                c.invoke("getblockcount", new Object[0], Long.class);
+                c.invoke("getblockhash", new Object[] {i}, String.class);
+            }
+        })) {
+            assertThat(tape.size(), is(equalTo(5)));
+            final ReplayRpcClient replay = new ReplayRpcClient(tape);
+            for (long i = 1; i <= 4; i++) {
+                assertThat(replay.invoke("getblockcount", new Object[0], Long.class), is(equalTo(i)));
+            }
+            // Once the recorded responses run out, the last one repeats
+            assertThat(replay.invoke("getblockcount", new Object[0], Long.class), is(equalTo(4L)));
+            assertThat(replay.invoke("getblockhash", new Object[] {2}, String.class), is(equalTo("hash2")));
+        }
+    }
+
+    @Test
+    public void lookupTest() throws Throwable {
+        try (RpcTape tape = record((c) -> {
+            c.invoke("getblockcount", new Object[0], Long.class);
+            c.invoke("getblockcount", new Object[0], Long.class);
+            c.invoke("getblockcount", new Object[0], Long.class);
+        })) {
+            final String key = RpcTape.key("getblockcount", new Object[0]);
+            assertThat(tape.lookup(key, 0).path("result").asInt(), is(equalTo(1)));
+            assertThat(tape.lookup(key, 2).path("result").asInt(), is(equalTo(3)));
+            assertThat(tape.lookup(key, 1).path("result").asInt(), is(equalTo(2)));
+            assertThat(tape.lookup(key, 7).path("result").asInt(), is(equalTo(3)));
+            assertThat(tape.lookup(RpcTape.key("getblockcount", new Object[] {1}), 0), is(nullValue()));
+        }
+    }
+
+    @Test
+    public void errorsTest() throws Throwable {
+        try (RpcTape tape = record((c) -> {
+            assertThrows(JsonRpcClientException.class,
+                    () -> c.invoke("getblockhash", new Object[] {-1}, String.class));
+        })) {
+            final JsonRpcClientException ex = assertThrows(JsonRpcClientException.class,
+                    () -> new ReplayRpcClient(tape).invoke("getblockhash", new Object[] {-1}, String.class));
+            assertThat(ex.getCode(), is(equalTo(-8)));
+            assertThat(ex.getMessage(), is(equalTo("Block height out of range")));
+        }
+    }
+
+    @Test
+    public void unrecordedRequestTest() throws Throwable {
+        try (RpcTape tape = record((c) -> c.invoke("getblockcount", new Object[0], Long.class))) {
+            assertThrows(IllegalStateException.class,
+                    () -> new ReplayRpcClient(tape).invoke("getblockhash", new Object[] {0}, String.class));
+        }
+    }
+
+    @Test
+    public void emptyTapeTest() throws Throwable {
+        try (RpcTape tape = record((c) -> { })) {
+            assertThat(tape.size(), is(equalTo(0)));
+            assertThat(tape.lookup(RpcTape.key("getblockcount", new Object[0]), 0), is(nullValue()));
+        }
+    }
+
+    @Test
+    public void notATapeTest() throws IOException {
+        Files.write(file, "not a tape at all".getBytes("UTF-8"));
+        assertThrows(IOException.class, () -> RpcTape.open(file));
+    }
+}
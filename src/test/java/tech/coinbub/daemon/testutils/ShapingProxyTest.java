@@ -0,0 +1,185 @@
+package tech.coinbub.daemon.testutils;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ShapingProxyTest {
+    private ServerSocket echo;
+    private ShapingProxy proxy;
+
+    /**
+     * Starts a daemon stand-in that echoes every byte back.
+     */
+    @BeforeEach
+    public void startEcho() throws IOException {
+        echo = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        final Thread thread = new Thread(() -> {
+            try {
+                while (true) {
+                    final Socket socket = echo.accept();
+                    final Thread connection = new Thread(() -> {
+                        try (Socket s = socket) {
+                            final InputStream in = s.getInputStream();
+                            final OutputStream out = s.getOutputStream();
+                            final byte[] buffer = new byte[4096];
+                            int read;
+                            while ((read = in.read(buffer)) != -1) {
+                                out.write(buffer, 0, read);
+                                out.flush();
+                            }
+                        } catch (IOException ex) {
+                            // Client went away
+                        }
+                    });
+                    connection.setDaemon(true);
+                    connection.start();
+                }
+            } catch (IOException ex) {
+                // Closed
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @AfterEach
+    public void close() throws IOException {
+        if (proxy != null) {
+            proxy.close();
+        }
+        echo.close();
+    }
+
+    private Socket connect(final String... pairs) throws Exception {
+        proxy = new ShapingProxy(echo.getInetAddress().getHostAddress(), echo.getLocalPort(),
+                DaemonConfigTest.config(pairs));
+        final Socket socket = new Socket(InetAddress.getLoopbackAddress(), proxy.getPort());
+        socket.setTcpNoDelay(true);
+        socket.setSoTimeout(10000);
+        return socket;
+    }
+
+    private static void write(final Socket socket, final String data) throws IOException {
+        socket.getOutputStream().write(data.getBytes(StandardCharsets.UTF_8));
+        socket.getOutputStream().flush();
+    }
+
+    private static void readFully(final Socket socket, final int length) throws IOException {
+        final byte[] buffer = new byte[length];
+        for (int read = 0; read < length; ) {
+            final int n = socket.getInputStream().read(buffer, read, length - read);
+            if (n == -1) {
+                throw new EOFException();
+            }
+            read += n;
+        }
+    }
+
+    private static String request(final String body) {
+        return "POST / HTTP/1.1\r\nHost: daemon\r\nContent-Length: " + body.length() + "\r\n\r\n" + body;
+    }
+
+    private static long requests(final String method) {
+        final DockerizedMetrics.Traffic traffic = DockerizedMetrics.getTraffic().get(method);
+        return traffic == null ? 0 : traffic.getRequests();
+    }
+
+    private static long sent(final String method) {
+        final DockerizedMetrics.Traffic traffic = DockerizedMetrics.getTraffic().get(method);
+        return traffic == null ? 0 : traffic.getBytesSent();
+    }
+
+    @Test
+    public void splitRequestTest() throws Exception {
+        final String request = request("{\"jsonrpc\":\"2.0\",\"method\":\"splitcall\",\"params\":[],\"id\":1}");
+        final int[] splits = {10, request.indexOf("\r\n\r\n") + 2, request.indexOf("method") + 3, request.length()};
+        try (Socket socket = connect()) {
+            int from = 0;
+            for (int split : splits) {
+                write(socket, request.substring(from, split));
+                from = split;
+                Thread.sleep(30);
+            }
+            readFully(socket, request.length());
+        }
+        assertThat(requests("splitcall"), is(equalTo(1L)));
+        assertThat(sent("splitcall"), is(equalTo((long) request.length())));
+    }
+
+    @Test
+    public void pipelinedRequestsTest() throws Exception {
+        final String first = request("{\"method\":\"pipefirst\",\"id\":1}");
+        final String second = request("{\"method\":\"pipesecond\",\"id\":2}");
+        final String batch = request("[{\"method\":\"pipefirst\",\"id\":3}]");
+        final long batches = requests("batch");
+        try (Socket socket = connect()) {
+            write(socket, first + second + batch);
+            readFully(socket, first.length() + second.length() + batch.length());
+        }
+        assertThat(requests("pipefirst"), is(equalTo(1L)));
+        assertThat(requests("pipesecond"), is(equalTo(1L)));
+        assertThat(requests("batch"), is(equalTo(batches + 1)));
+        assertThat(sent("pipefirst"), is(equalTo((long) first.length())));
+        assertThat(sent("pipesecond"), is(equalTo((long) second.length())));
+    }
+
+    @Test
+    public void latencyTest() throws Exception {
+        try (Socket socket = connect("shaping.latency", "100")) {
+            final long start = System.nanoTime();
+            write(socket, "ping");
+            readFully(socket, 4);
+            final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertThat(elapsed, is(greaterThanOrEqualTo(200L)));
+            assertThat(elapsed, is(lessThan(1000L)));
+        }
+    }
+
+    @Test
+    public void latencyPipelinedTest() throws Exception {
+        try (Socket socket = connect("shaping.latency", "100")) {
+            final long start = System.nanoTime();
+            for (int i = 0; i < 5; i++) {
+                write(socket, "ping");
+                Thread.sleep(20);
+            }
+            readFully(socket, 20);
+            final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            // Five round trips in flight at once, rather than 1000ms one after another
+            assertThat(elapsed, is(greaterThanOrEqualTo(280L)));
+            assertThat(elapsed, is(lessThan(700L)));
+        }
+    }
+
+    @Test
+    public void bandwidthTest() throws Exception {
+        final StringBuilder data = new StringBuilder();
+        while (data.length() < 16384) {
+            data.append("0123456789abcdef");
+        }
+        try (Socket socket = connect("shaping.bandwidth", "32k")) {
+            final long start = System.nanoTime();
+            write(socket, data.toString());
+            readFully(socket, data.length());
+            final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            // 16k at 32k/s takes 500ms in each direction, partly overlapped
+            assertThat(elapsed, is(greaterThanOrEqualTo(500L)));
+            assertThat(elapsed, is(lessThan(2500L)));
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package tech.coinbub.daemon.testutils;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class SharedDaemonTest {
+    // Live on any Linux host; SharedDaemon treats every entry as live without /proc
+    private static final String SELF = ManagementFactory.getRuntimeMXBean().getName().split("@")[0];
+    private static final String INIT = "1";
+    private static final String DEAD = "2147483647";
+
+    private Path dir;
+    private final AtomicInteger starts = new AtomicInteger();
+    private final AtomicInteger teardowns = new AtomicInteger();
+
+    @BeforeEach
+    public void createDir() throws IOException {
+        dir = Files.createTempDirectory("shared-daemon");
+    }
+
+    @AfterEach
+    public void deleteDir() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    private String acquire(final SharedDaemon shared) throws Exception {
+        return shared.acquire(() -> "pool" + starts.incrementAndGet());
+    }
+
+    @Test
+    public void lastReleaseTearsDownTest() throws Exception {
+        final SharedDaemon first = new SharedDaemon(dir, INIT);
+        final SharedDaemon second = new SharedDaemon(dir, SELF);
+        assertThat(acquire(first), is(equalTo("pool1")));
+        assertThat(acquire(second), is(equalTo("pool2")));
+        assertThat(first.read(), is(equalTo(new LinkedHashSet<>(Arrays.asList(INIT, SELF)))));
+
+        first.release(teardowns::incrementAndGet);
+        assertThat(teardowns.get(), is(equalTo(0)));
+        assertThat(second.read(), is(equalTo(Collections.singleton(SELF))));
+
+        second.release(teardowns::incrementAndGet);
+        assertThat(teardowns.get(), is(equalTo(1)));
+        assertThat(Files.exists(dir.resolve("registry")), is(false));
+    }
+
+    @Test
+    public void deadProcessesArePrunedTest() throws Exception {
+        Files.write(dir.resolve("registry"), Arrays.asList(DEAD, ""), StandardCharsets.UTF_8);
+        final SharedDaemon shared = new SharedDaemon(dir, SELF);
+        assertThat(shared.read().isEmpty(), is(true));
+        acquire(shared);
+        assertThat(shared.read(), is(equalTo(Collections.singleton(SELF))));
+        shared.release(teardowns::incrementAndGet);
+        assertThat(teardowns.get(), is(equalTo(1)));
+    }
+
+    @Test
+    public void failedStartRegistersNothingTest() throws Exception {
+        final SharedDaemon shared = new SharedDaemon(dir, SELF);
+        final IllegalStateException error = new IllegalStateException("boot failed");
+        assertThat(assertThrows(IllegalStateException.class, () -> shared.acquire(() -> {
+            throw error;
+        })), is(error));
+        assertThat(shared.read().isEmpty(), is(true));
+        // The lock was released, so the next process can still start
+        assertThat(acquire(shared), is(equalTo("pool1")));
+    }
+
+    @Test
+    public void teardownRunsUnderLockTest() throws Exception {
+        final SharedDaemon shared = new SharedDaemon(dir, SELF);
+        acquire(shared);
+        final boolean[] locked = new boolean[1];
+        shared.release(() -> {
+            // Another channel in this JVM overlapping a held lock fails to lock
+            try (FileChannel channel = FileChannel.open(dir.resolve("lock"), StandardOpenOption.WRITE)) {
+                channel.tryLock();
+            } catch (OverlappingFileLockException ex) {
+                locked[0] = true;
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+        assertThat(locked[0], is(true));
+    }
+}
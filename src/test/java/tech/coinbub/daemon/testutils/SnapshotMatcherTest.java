@@ -0,0 +1,201 @@
+package tech.coinbub.daemon.testutils;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static tech.coinbub.daemon.testutils.SnapshotMatcher.matchesSnapshot;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import org.hamcrest.Matcher;
+import org.hamcrest.StringDescription;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class SnapshotMatcherTest {
+    public static class Tx {
+        public String hash;
+        public int n;
+
+        Tx(final String hash, final int n) {
+            this.hash = hash;
+            this.n = n;
+        }
+    }
+
+    public static class Block {
+        public String hash;
+        public long height;
+        public double difficulty;
+        public List<Tx> tx;
+
+        Block(final String hash, final long height, final double difficulty, final Tx... tx) {
+            this.hash = hash;
+            this.height = height;
+            this.difficulty = difficulty;
+            this.tx = Arrays.asList(tx);
+        }
+    }
+
+    @JsonPropertyOrder({"z", "a"})
+    public static class Unsorted {
+        public int a;
+        public int z;
+
+        Unsorted(final int a, final int z) {
+            this.a = a;
+            this.z = z;
+        }
+    }
+
+    public static class Broken {
+        public String getValue() {
+            throw new IllegalStateException("boom");
+        }
+    }
+
+    private Path dir;
+
+    @BeforeEach
+    public void createDir() throws IOException {
+        dir = Files.createTempDirectory("snapshots");
+        System.setProperty("dockerizedSnapshotDir", dir.toString());
+    }
+
+    @AfterEach
+    public void deleteDir() throws IOException {
+        System.clearProperty("dockerizedSnapshotDir");
+        System.clearProperty("updateSnapshots");
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach((path) -> path.toFile().delete());
+        }
+    }
+
+    private void snapshot(final String name, final String json) throws IOException {
+        Files.write(dir.resolve(name + ".json"), json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Block block() {
+        return new Block("00ab", 101, 4.5, new Tx("aa", 0), new Tx("bb", 1));
+    }
+
+    private static <T> String mismatch(final Matcher<T> matcher, final T item) {
+        final StringDescription description = new StringDescription();
+        matcher.describeMismatch(item, description);
+        return description.toString();
+    }
+
+    @Test
+    public void matchesTest() throws Exception {
+        snapshot("block", "{\"difficulty\": 4.5, \"hash\": \"00ab\", \"height\": 101,"
+                + " \"tx\": [{\"hash\": \"aa\", \"n\": 0}, {\"hash\": \"bb\", \"n\": 1}]}");
+        assertThat(matchesSnapshot("block").matches(block()), is(true));
+    }
+
+    @Test
+    public void numbersByValueTest() throws Exception {
+        snapshot("block", "{\"difficulty\": 4.50, \"hash\": \"00ab\", \"height\": 101.0,"
+                + " \"tx\": [{\"hash\": \"aa\", \"n\": 0}, {\"hash\": \"bb\", \"n\": 1}]}");
+        assertThat(matchesSnapshot("block").matches(block()), is(true));
+    }
+
+    @Test
+    public void missingSnapshotTest() {
+        assertThat(mismatch(matchesSnapshot("absent"), block()), is(equalTo("no snapshot at "
+                + dir.resolve("absent.json") + "; run with -DupdateSnapshots=true to record it")));
+    }
+
+    @Test
+    public void updateTest() throws Exception {
+        System.setProperty("updateSnapshots", "true");
+        assertThat(matchesSnapshot("block").matches(block()), is(true));
+        System.clearProperty("updateSnapshots");
+        assertThat(Files.exists(dir.resolve("block.json")), is(true));
+        assertThat(matchesSnapshot("block").matches(block()), is(true));
+        assertThat(matchesSnapshot("block").matches(new Block("00ab", 102, 4.5)), is(false));
+    }
+
+    @Test
+    public void differencesTest() throws Exception {
+        snapshot("block", "{\"bits\": \"1d00ffff\", \"hash\": \"00ab\", \"height\": 100,"
+                + " \"tx\": [{\"hash\": \"aa\", \"n\": 0}]}");
+        final String file = dir.resolve("block.json").toString();
+        assertThat(mismatch(matchesSnapshot("block"), block()), is(equalTo("differed from snapshot " + file + ":"
+                + "\n  height: expected 100 but was 101"
+                + "\n  tx: expected 1 items but had 2"
+                + "\n  bits: missing \"1d00ffff\""
+                + "\n  difficulty: unexpected 4.5")));
+    }
+
+    @Test
+    public void ignoredPathsTest() throws Exception {
+        snapshot("block", "{\"difficulty\": 4.5, \"hash\": \"ffff\", \"height\": 101,"
+                + " \"tx\": [{\"hash\": \"cc\", \"n\": 0}, {\"hash\": \"dd\", \"n\": 1}]}");
+        assertThat(matchesSnapshot("block", "hash", "tx.hash").matches(block()), is(true));
+        assertThat(matchesSnapshot("block", "hash").matches(block()), is(false));
+        assertThat(matchesSnapshot("block", "hash", "tx.hash", "difficulty")
+                .matches(new Block("00ab", 101, 0, new Tx("aa", 0), new Tx("bb", 1))), is(true));
+    }
+
+    @Test
+    public void unsortedSnapshotTest() throws Exception {
+        snapshot("block", "{\"tx\": [{\"n\": 0, \"hash\": \"aa\"}, {\"n\": 1, \"hash\": \"bb\"}],"
+                + " \"height\": 101, \"hash\": \"00ab\", \"difficulty\": 4.5}");
+        assertThat(matchesSnapshot("block").matches(block()), is(true));
+
+        final String file = dir.resolve("block.json").toString();
+        assertThat(mismatch(matchesSnapshot("block"), new Block("00ab", 102, 4.5, new Tx("aa", 0))),
+                is(equalTo("differed from snapshot " + file + ":"
+                        + "\n  tx: expected 2 items but had 1"
+                        + "\n  height: expected 101 but was 102")));
+    }
+
+    @Test
+    public void unsortedBeanTest() throws Exception {
+        snapshot("unsorted", "{\"a\": 1, \"z\": 2}");
+        assertThat(matchesSnapshot("unsorted").matches(new Unsorted(1, 2)), is(true));
+        assertThat(mismatch(matchesSnapshot("unsorted"), new Unsorted(1, 3)),
+                startsWith("differed from snapshot"));
+        assertThat(mismatch(matchesSnapshot("unsorted"), new Unsorted(1, 3)).endsWith("z: expected 2 but was 3"),
+                is(true));
+        assertThat(matchesSnapshot("unsorted").matches(Collections.singletonMap("a", 1)), is(false));
+    }
+
+    @Test
+    public void largerThanPipeTest() throws Exception {
+        final Tx[] txs = new Tx[20000];
+        final StringBuilder json = new StringBuilder(
+                "{\"difficulty\": 1.0, \"hash\": \"00ab\", \"height\": 1, \"tx\": [");
+        for (int i = 0; i < txs.length; i++) {
+            txs[i] = new Tx("tx" + i, i);
+            json.append(i == 0 ? "" : ", ")
+                    .append("{\"hash\": \"tx").append(i).append("\", \"n\": ").append(i).append('}');
+        }
+        snapshot("large", json.append("]}").toString());
+        assertThat(json.length() > SnapshotMatcher.PIPE_SIZE * 4, is(true));
+        assertThat(matchesSnapshot("large").matches(new Block("00ab", 1, 1.0, txs)), is(true));
+
+        // Stops at the first difference, abandoning the rest of the serialization
+        txs[3] = new Tx("other", 3);
+        assertThat(matchesSnapshot("large").matches(new Block("00ab", 1, 1.0, txs)), is(false));
+        assertThat(mismatch(matchesSnapshot("large"), new Block("00ab", 1, 1.0, txs)).endsWith(
+                "tx[3].hash: expected \"tx3\" but was \"other\""), is(true));
+    }
+
+    @Test
+    public void serializationFailureTest() throws Exception {
+        snapshot("broken", "{\"value\": \"x\"}");
+        final String description = mismatch(matchesSnapshot("broken"), new Broken());
+        assertThat(description, startsWith("could not be compared with " + dir.resolve("broken.json")
+                + ": com.fasterxml.jackson.databind.JsonMappingException: boom"));
+    }
+}